@@ -0,0 +1,72 @@
+package taskManager;
+
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import taskManager.bench.BenchmarkData;
+
+/**
+ * Command parsing and dispatch in TaskManagementProtocol.processLine for a
+ * logged-in session, with output written to a discarding stream.
+ * Lives in the taskManager package to reach the package-private session type.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ProtocolBenchmark {
+
+    private static final String USER = "bench_protocol";
+
+    private TaskManagementProtocol.ClientSession session;
+    private PrintWriter out;
+
+    @Setup(Level.Trial)
+    public void login() throws Exception {
+        BenchmarkData.createUser(USER, 1000);
+        TaskDataManager.openUser(USER);
+        session = new TaskManagementProtocol.ClientSession();
+        session.loggedIn = true;
+        session.username = USER;
+        out = new PrintWriter(OutputStream.nullOutputStream());
+    }
+
+    @TearDown(Level.Trial)
+    public void logout() {
+        TaskDataManager.closeUser(USER);
+        BenchmarkData.deleteUser(USER);
+    }
+
+    // Dispatch only: no storage access
+    @Benchmark
+    public void categories() {
+        TaskManagementProtocol.processLine("CATEGORIES", session, out);
+    }
+
+    // Full ADD parsing and validation, rejected before touching storage
+    @Benchmark
+    public void addInvalidDate() {
+        TaskManagementProtocol.processLine("ADD WORK 2026-13-45 Finish the report", session, out);
+    }
+
+    @Benchmark
+    public void unknownCommand() {
+        TaskManagementProtocol.processLine("FROBNICATE now", session, out);
+    }
+
+    // Option parsing plus one page read from the resident tasks
+    @Benchmark
+    public void viewFilteredPage() {
+        TaskManagementProtocol.processLine("VIEW CATEGORY WORK FROM 2026-03-01 TO 2026-06-30 PAGE 2 SIZE 10", session, out);
+    }
+
+    @Benchmark
+    public void viewAll() {
+        TaskManagementProtocol.processLine("VIEW", session, out);
+    }
+}
@@ -0,0 +1,72 @@
+package taskManager;
+
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import taskManager.bench.BenchmarkData;
+
+/**
+ * SEARCH latency as one user's task count grows, through the per-user indexes.
+ * Each query asks for one page (or matches a single task), so a flat result
+ * means the cost doesn't depend on how many tasks the user has.
+ * The view cache is turned off so every invocation runs the query.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-DtaskManager.viewCacheEntries=0")
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+
+    @Param({ "1000", "10000", "100000" })
+    public int taskCount;
+
+    private String user;
+    private TaskManagementProtocol.ClientSession session;
+    private PrintWriter out;
+
+    @Setup(Level.Trial)
+    public void login() throws Exception {
+        user = "bench_search_" + taskCount;
+        BenchmarkData.createUser(user, taskCount);
+        TaskDataManager.openUser(user);
+        session = new TaskManagementProtocol.ClientSession();
+        session.loggedIn = true;
+        session.username = user;
+        out = new PrintWriter(OutputStream.nullOutputStream());
+    }
+
+    @TearDown(Level.Trial)
+    public void logout() {
+        TaskDataManager.closeUser(user);
+        BenchmarkData.deleteUser(user);
+    }
+
+    // One rare word (task numbers are unique)
+    @Benchmark
+    public void textWord() {
+        TaskManagementProtocol.processLine("SEARCH TEXT 777", session, out);
+    }
+
+    // A rare word together with one every task has
+    @Benchmark
+    public void textWordsAndCategory() {
+        TaskManagementProtocol.processLine("SEARCH CATEGORY PERSONAL TEXT benchmark 777", session, out);
+    }
+
+    // First page of an eighth of the tasks
+    @Benchmark
+    public void categoryPage() {
+        TaskManagementProtocol.processLine("SEARCH CATEGORY WORK PAGE 1 SIZE 20", session, out);
+    }
+
+    // First page of one due date (1 in 84 tasks)
+    @Benchmark
+    public void dayPage() {
+        TaskManagementProtocol.processLine("SEARCH FROM 2026-03-03 TO 2026-03-03 PAGE 1 SIZE 20", session, out);
+    }
+}
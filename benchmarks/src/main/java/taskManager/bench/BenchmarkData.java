@@ -0,0 +1,46 @@
+package taskManager.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Writes and removes benchmark users directly in data/, bypassing REGISTER
+ * so no credential index entries are left behind.
+ */
+public class BenchmarkData {
+
+    private static final String DATA_DIR = "data/";
+
+    /**
+     * Creates a user file holding taskCount tasks, spread over the categories and a year of due dates
+     */
+    public static void createUser(String username, int taskCount) throws IOException {
+        createUser(new File(DATA_DIR), username, taskCount);
+    }
+
+    /**
+     * Same, in another data directory
+     */
+    public static void createUser(File dir, String username, int taskCount) throws IOException {
+        dir.mkdirs();
+        String[] categories = { "WORK", "PERSONAL", "SHOPPING", "HEALTH", "EDUCATION", "FINANCE", "TRAVEL", "HOME" };
+        try (PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(new File(dir, username + ".txt"))))) {
+            pw.println("bench");
+            pw.println("nextId:" + (taskCount + 1));
+            for (int i = 1; i <= taskCount; i++) {
+                pw.println(i + "|" + categories[i % categories.length] + "|2026-"
+                        + String.format("%02d-%02d", i % 12 + 1, i % 28 + 1) + "|Benchmark task " + i);
+            }
+        }
+    }
+
+    /**
+     * Deletes a benchmark user's file
+     */
+    public static void deleteUser(String username) {
+        new File(DATA_DIR + username + ".txt").delete();
+    }
+}
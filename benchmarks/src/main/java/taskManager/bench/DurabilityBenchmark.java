@@ -0,0 +1,77 @@
+package taskManager.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.*;
+
+import taskManager.ServerMetrics;
+import taskManager.TaskDataManager;
+
+/**
+ * Write throughput under each durability policy, with 8 sessions changing
+ * tasks at once (one user each). Every operation adds a task and deletes the
+ * one added before it, through the same path as a BATCH, so the task list
+ * stays small and the time goes to the write path rather than rendering.
+ *
+ * JMH forks a fresh JVM per policy, so the property is set before
+ * TaskDataManager reads it. fsyncs per operation are printed at the end of each run.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+@Threads(8)
+@State(Scope.Thread)
+public class DurabilityBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Policy {
+        @Param({ "os", "group", "per-op" })
+        public String durability;
+
+        @Setup(Level.Trial)
+        public void configure() {
+            System.setProperty("taskManager.durability", durability);
+        }
+
+        @TearDown(Level.Trial)
+        public void report() {
+            long syncs = new ServerMetrics().getStorageSyncs();
+            System.out.printf("%n%s: %d operations, %.3f fsyncs per operation%n",
+                    durability, OPERATIONS.sum(), syncs / (double) Math.max(1, OPERATIONS.sum()));
+        }
+    }
+
+    private static final LongAdder OPERATIONS = new LongAdder();
+    private static int nextUser = 0;
+
+    private String user;
+    private int lastId = 0;
+
+    @Setup(Level.Trial)
+    public void createUser(Policy policy) throws Exception {
+        synchronized (DurabilityBenchmark.class) {
+            user = "bench_durability_" + nextUser++;
+        }
+        BenchmarkData.createUser(user, 0);
+        TaskDataManager.openUser(user);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteUser() {
+        TaskDataManager.closeUser(user);
+        BenchmarkData.deleteUser(user);
+    }
+
+    @Benchmark
+    public int[] addAndDelete() {
+        lastId++;
+        OPERATIONS.increment();
+        return TaskDataManager.applyBatch(user, List.of(
+                new String[] { "ADD", "WORK", "2026-05-01", "Durability task " + lastId },
+                new String[] { "DELETE", String.valueOf(lastId - 1) }));
+    }
+}
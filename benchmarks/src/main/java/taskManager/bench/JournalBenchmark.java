@@ -0,0 +1,70 @@
+package taskManager.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import taskManager.TaskDataManager;
+
+/**
+ * Compares bytes written per ADD/DELETE for a user with a large task list:
+ * the old full-file rewrite against the append-only journal.
+ * The journal side flushes after every operation (the worst case for
+ * write-behind) and includes any compaction it triggers.
+ *
+ * Usage: JournalBenchmark [tasks per user] [operations]
+ */
+public class JournalBenchmark {
+
+    private static final String DATA_DIR = "data/";
+    private static final String USER = "bench_journal";
+
+    public static void main(String[] args) throws IOException {
+        int taskCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+
+        File file = new File(DATA_DIR + USER + ".txt");
+        new File(DATA_DIR).mkdirs();
+        writeSnapshot(file, taskCount);
+        long snapshotBytes = file.length();
+
+        // Before: every ADD or DELETE rewrote the whole file (plus a temp copy for DELETE)
+        long rewriteBytes = snapshotBytes * operations;
+
+        // After: append one journal record per operation, compacting as tombstones pile up
+        long journalBytes = 0;
+        for (int i = 0; i < operations; i++) {
+            long before = file.length();
+            if (i % 2 == 0) {
+                TaskDataManager.addTask(USER, "WORK", "2026-01-15", "Benchmark task " + i);
+            } else {
+                TaskDataManager.deleteTask(USER, String.valueOf(i));
+            }
+            TaskDataManager.flushAll();
+            TaskDataManager.compactAll();
+            long after = file.length();
+            // A shrinking file means compaction rewrote it: count the whole new file
+            journalBytes += after >= before ? after - before : after;
+        }
+
+        System.out.printf("Tasks per user: %d, operations: %d%n", taskCount, operations);
+        System.out.printf("%-14s | %-14s | %s%n", "PATH", "BYTES/OP", "TOTAL BYTES");
+        System.out.printf("%-14s | %-14d | %d%n", "full rewrite", rewriteBytes / operations, rewriteBytes);
+        System.out.printf("%-14s | %-14d | %d%n", "journal", journalBytes / operations, journalBytes);
+        System.out.printf("Final file size: %d bytes%n", file.length());
+
+        file.delete();
+    }
+
+    private static void writeSnapshot(File file, int taskCount) throws IOException {
+        try (PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(file)))) {
+            pw.println("bench");
+            pw.println("nextId:" + (taskCount + 1));
+            for (int i = 1; i <= taskCount; i++) {
+                pw.println(i + "|WORK|2026-01-15|Benchmark task " + i);
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package taskManager.bench;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import taskManager.TCPServerPool;
+import taskManager.TaskClient;
+import taskManager.TaskSession;
+
+/**
+ * End-to-end load over loopback: N concurrent sessions, each behaving like an
+ * interactive TCPClient (one command, wait for the framed response, repeat)
+ * with a 70% VIEW PAGE 1 SIZE 20 / 20% ADD / 10% DELETE mix.
+ * Reports ops/sec and p50 / p99 / max latency. The sessions are TaskClient
+ * connections sharing two I/O threads, so N can go well past the thread count.
+ *
+ * Usage: LoadGenerator <host> <port> <sessions> <seconds> [--embedded <threads> <pool|nio>]
+ * With --embedded the server is started in this JVM first.
+ * Logins aren't timed but do take from the duration, at a password hash each; for short
+ * runs of many sessions give the server a lower -DtaskManager.passwordIterations.
+ */
+public class LoadGenerator {
+
+    private static final int IO_THREADS = 2;
+
+    // Sessions connecting and logging in at the same time
+    private static final int CONNECTS_IN_FLIGHT = 32;
+
+    // Sessions that ended with an error rather than at the deadline
+    private static final AtomicInteger FAILED = new AtomicInteger();
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 4 && args.length != 7) {
+            throw new IllegalArgumentException(
+                    "Parameters: <Host> <Port> <Sessions> <Seconds> [--embedded <Threads> <pool|nio>]");
+        }
+        String host = args[0];
+        int port = Integer.parseInt(args[1]);
+        int sessions = Integer.parseInt(args[2]);
+        int seconds = Integer.parseInt(args[3]);
+
+        if (args.length == 7) {
+            Thread server = new Thread(() -> {
+                try {
+                    TCPServerPool.main(new String[] { args[1], args[5], args[6] });
+                } catch (IOException e) {
+                    // Nothing to measure without it
+                    System.out.println("Embedded server failed: " + e.getMessage());
+                    System.exit(1);
+                }
+            });
+            server.setDaemon(true);
+            server.start();
+            Thread.sleep(1000);
+        }
+
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        Session[] clients = new Session[sessions];
+        CountDownLatch done = new CountDownLatch(sessions);
+
+        // Every session runs on the client's I/O threads, so thousands need no thread of their own
+        try (TaskClient client = new TaskClient(IO_THREADS)) {
+            // A few logins at a time, so the server's accept queue doesn't overflow
+            Semaphore connecting = new Semaphore(CONNECTS_IN_FLIGHT);
+            for (int i = 0; i < sessions; i++) {
+                clients[i] = new Session(client, host, port, "load_" + i, deadline, done);
+                connecting.acquire();
+                clients[i].start().whenComplete((ignored, error) -> connecting.release());
+            }
+            done.await();
+        }
+
+        long[] all = Arrays.stream(clients).flatMapToLong(session -> Arrays.stream(session.latencies()))
+                .sorted().toArray();
+        if (all.length == 0) {
+            System.out.println("No operations completed.");
+            System.exit(1);
+        }
+        System.out.printf("Sessions: %d (%d failed), duration: %d s, operations: %d%n",
+                sessions, FAILED.get(), seconds, all.length);
+        System.out.printf("Throughput: %.0f ops/sec%n", all.length / (double) seconds);
+        System.out.printf("Latency p50: %.3f ms, p99: %.3f ms, max: %.3f ms%n",
+                percentile(all, 0.50) / 1e6, percentile(all, 0.99) / 1e6, all[all.length - 1] / 1e6);
+        System.exit(0);
+    }
+
+    // One simulated client: each response sends the next command, on the I/O thread that completed it
+    private static final class Session {
+        private final TaskClient client;
+        private final String host;
+        private final int port;
+        private final String username;
+        private final long deadline;
+        private final CountDownLatch done;
+
+        private TaskSession session;
+        private long[] samples = new long[1024];
+        private int count = 0;
+        private final ArrayDeque<String> added = new ArrayDeque<>();
+        private long n = 0;
+
+        Session(TaskClient client, String host, int port, String username, long deadline, CountDownLatch done) {
+            this.client = client;
+            this.host = host;
+            this.port = port;
+            this.username = username;
+            this.deadline = deadline;
+            this.done = done;
+        }
+
+        // Completes once logged in (or failed), when the commands have started
+        CompletableFuture<Boolean> start() {
+            return client.connect(host, port)
+                    .thenCompose(connected -> {
+                        session = connected;
+                        return session.register(username, "load");
+                    })
+                    .thenCompose(registered -> session.login(username, "load"))
+                    .whenComplete((loggedIn, error) -> {
+                        if (error != null) {
+                            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                            finish("failed: " + cause.getMessage());
+                        } else if (!loggedIn) {
+                            finish("failed: Login failed for " + username);
+                        } else {
+                            next();
+                        }
+                    });
+        }
+
+        private void next() {
+            if (System.nanoTime() >= deadline) {
+                session.send("LOGOUT").whenComplete((response, error) -> finish(null));
+                return;
+            }
+
+            String command;
+            long pick = n++ % 10;
+            if (pick < 2) {
+                command = "ADD WORK 2026-06-15 Load test task " + n;
+            } else if (pick == 2 && !added.isEmpty()) {
+                command = "DELETE " + added.poll();
+            } else {
+                command = "VIEW PAGE 1 SIZE 20";
+            }
+
+            long start = System.nanoTime();
+            session.send(command).whenComplete((response, error) -> {
+                long elapsed = System.nanoTime() - start;
+                if (error != null) {
+                    finish("failed: " + error.getMessage());
+                    return;
+                }
+                if (command.startsWith("ADD")) {
+                    int idStart = response.indexOf("(ID: ");
+                    if (idStart >= 0) added.add(response.substring(idStart + 5, response.indexOf(')', idStart)));
+                }
+                if (count == samples.length) samples = Arrays.copyOf(samples, count * 2);
+                samples[count++] = elapsed;
+                next();
+            });
+        }
+
+        private void finish(String failure) {
+            if (failure != null) {
+                FAILED.incrementAndGet();
+                System.out.println("Session " + username + " " + failure);
+            }
+            if (session != null) session.close();
+            done.countDown();
+        }
+
+        // The latency of every timed command in nanoseconds; read once done has reached zero
+        long[] latencies() {
+            return Arrays.copyOf(samples, count);
+        }
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
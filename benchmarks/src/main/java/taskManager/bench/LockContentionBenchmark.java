@@ -0,0 +1,83 @@
+package taskManager.bench;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import taskManager.TaskDataManager;
+
+/**
+ * Measures TaskDataManager throughput as the number of concurrent users grows.
+ * Each thread works on its own user with a 4:1 VIEW/ADD mix, so with per-user
+ * locking the ops/sec should scale with the thread count up to the core count.
+ *
+ * Usage: LockContentionBenchmark [seconds per step] [max threads]
+ */
+public class LockContentionBenchmark {
+
+    private static final String DATA_DIR = "data/";
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        System.out.printf("%-8s | %-12s | %s%n", "THREADS", "OPS/SEC", "SPEEDUP");
+        double baseline = 0;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            double opsPerSec = run(threads, seconds);
+            if (threads == 1) baseline = opsPerSec;
+            System.out.printf("%-8d | %-12.0f | %.2fx%n", threads, opsPerSec, opsPerSec / baseline);
+            if (threads < maxThreads && threads * 2 > maxThreads) threads = maxThreads / 2;
+        }
+    }
+
+    private static double run(int threads, int seconds) throws Exception {
+        String[] users = new String[threads];
+        for (int i = 0; i < threads; i++) {
+            users[i] = "bench_lock_" + i;
+            createUser(users[i]);
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder ops = new LongAdder();
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int i = 0; i < threads; i++) {
+            String user = users[i];
+            new Thread(() -> {
+                long n = 0;
+                while (running.get()) {
+                    if (n % 5 == 0) {
+                        TaskDataManager.addTask(user, "WORK", "2026-01-15", "Benchmark task " + n);
+                    } else {
+                        TaskDataManager.getFormattedTasks(user);
+                    }
+                    n++;
+                    ops.increment();
+                }
+                done.countDown();
+            }).start();
+        }
+
+        Thread.sleep(seconds * 1000L);
+        running.set(false);
+        done.await();
+
+        for (String user : users) {
+            new File(DATA_DIR + user + ".txt").delete();
+        }
+        return ops.sum() / (double) seconds;
+    }
+
+    private static void createUser(String username) throws IOException {
+        new File(DATA_DIR).mkdirs();
+        try (PrintWriter pw = new PrintWriter(new FileWriter(DATA_DIR + username + ".txt"))) {
+            pw.println("bench");
+            pw.println("nextId:1");
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package taskManager.bench;
+
+import java.util.Random;
+
+import taskManager.ReminderSchedule;
+
+/**
+ * Cost of the reminder schedule: fills a ReminderSchedule with <users> users,
+ * each due on <days> random days of the coming year, and reports the heap it
+ * takes per (user, day) entry, then the time per schedule and cancel call.
+ *
+ * Usage: ReminderBenchmark <users> <days> [rounds]
+ * Run with a fixed heap (e.g. -Xms1g -Xmx1g) for steadier memory figures.
+ */
+public class ReminderBenchmark {
+
+    private static final int YEAR = 365;
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("Parameters: <Users> <Days> [Rounds]");
+        }
+        int users = Integer.parseInt(args[0]);
+        int days = Integer.parseInt(args[1]);
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        String[] names = new String[users];
+        for (int u = 0; u < users; u++) {
+            names[u] = "bench_" + u;
+        }
+        int[][] dueDays = new int[users][days];
+        Random random = new Random(42);
+        for (int[] userDays : dueDays) {
+            for (int d = 0; d < days; d++) {
+                userDays[d] = 20_000 + random.nextInt(YEAR);
+            }
+        }
+
+        long before = usedHeap();
+        ReminderSchedule schedule = new ReminderSchedule();
+        fill(schedule, names, dueDays);
+        long after = usedHeap();
+        System.out.printf("%d entries over %d days: %.1f bytes per entry%n",
+                schedule.size(), schedule.days(), (after - before) / (double) schedule.size());
+
+        for (int round = 1; round <= rounds; round++) {
+            long start = System.nanoTime();
+            long ops = 0;
+            for (int u = 0; u < users; u++) {
+                for (int day : dueDays[u]) {
+                    schedule.cancel(names[u], day);
+                    ops++;
+                }
+            }
+            long cancelled = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            fill(schedule, names, dueDays);
+            long scheduled = System.nanoTime() - start;
+            System.out.printf("Round %d: schedule %.0f ns, cancel %.0f ns per entry%n",
+                    round, scheduled / (double) ops, cancelled / (double) ops);
+        }
+    }
+
+    private static void fill(ReminderSchedule schedule, String[] names, int[][] dueDays) {
+        for (int u = 0; u < names.length; u++) {
+            for (int day : dueDays[u]) {
+                schedule.schedule(names[u], day);
+            }
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,149 @@
+package taskManager.bench;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+import taskManager.TaskManagementProtocol;
+
+/**
+ * Server startup time with many registered users. Builds a data directory of
+ * <users> users with <tasks> tasks each (password "bench") unless it exists,
+ * then starts TCPServerPool in a fresh JVM <runs> times and reports the time
+ * until the welcome message arrives, and until the first LOGIN + VIEW has
+ * loaded a user's tasks.
+ *
+ * Usage: StartupBenchmark <dataDir> <users> <tasks> <runs> [JVM options...]
+ * e.g. -XX:SharedArchiveFile=taskManager.jsa to start from an AppCDS archive
+ * (see README).
+ */
+public class StartupBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4) {
+            throw new IllegalArgumentException("Parameters: <DataDir> <Users> <Tasks> <Runs> [JVM options...]");
+        }
+        File dataDir = new File(args[0]);
+        int users = Integer.parseInt(args[1]);
+        int tasks = Integer.parseInt(args[2]);
+        int runs = Integer.parseInt(args[3]);
+        List<String> jvmOptions = Arrays.asList(args).subList(4, args.length);
+
+        if (!new File(dataDir, "users.idx").exists()) {
+            long start = System.nanoTime();
+            createUsers(dataDir, users, tasks);
+            System.out.printf("Created %d users with %d tasks each in %.1f s%n",
+                    users, tasks, (System.nanoTime() - start) / 1e9);
+        }
+
+        long[] ready = new long[runs];
+        long[] firstView = new long[runs];
+        for (int run = 0; run < runs; run++) {
+            long[] times = startServer(dataDir, jvmOptions, "bench_" + (run * 7919 % users));
+            ready[run] = times[0];
+            firstView[run] = times[1];
+            System.out.printf("Run %d: ready in %.1f ms, first LOGIN + VIEW %.1f ms%n",
+                    run + 1, times[0] / 1e6, times[1] / 1e6);
+        }
+        Arrays.sort(ready);
+        Arrays.sort(firstView);
+        System.out.printf("Median: ready in %.1f ms, first LOGIN + VIEW %.1f ms%n",
+                ready[runs / 2] / 1e6, firstView[runs / 2] / 1e6);
+    }
+
+    // Starts a server JVM, returning nanoseconds until it greets a client and until one user's first VIEW
+    private static long[] startServer(File dataDir, List<String> jvmOptions, String username) throws Exception {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        command.addAll(jvmOptions);
+        command.add("-DtaskManager.dataDir=" + dataDir.getPath());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("taskManager.TCPServerPool");
+        command.add(String.valueOf(port));
+        command.add("2");
+        command.add("nio");
+
+        long start = System.nanoTime();
+        Process server = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(new File(dataDir.getParentFile(), "startup-server.log"))
+                .start();
+        try {
+            Socket socket = connect(port, server);
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                 PrintWriter writer = new PrintWriter(socket.getOutputStream(), true)) {
+                readResponse(reader);
+                long ready = System.nanoTime() - start;
+
+                long loginStart = System.nanoTime();
+                writer.println("LOGIN " + username + " bench");
+                if (!readResponse(reader).startsWith("LOGIN OK")) throw new IOException("Login failed for " + username);
+                writer.println("VIEW PAGE 1 SIZE 20");
+                readResponse(reader);
+                return new long[] { ready, System.nanoTime() - loginStart };
+            }
+        } finally {
+            server.destroy();
+            server.waitFor();
+        }
+    }
+
+    private static Socket connect(int port, Process server) throws Exception {
+        while (true) {
+            try {
+                return new Socket("localhost", port);
+            } catch (IOException e) {
+                if (!server.isAlive()) throw new IOException("Server exited with " + server.exitValue());
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    private static String readResponse(BufferedReader reader) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.equals(TaskManagementProtocol.END_OF_RESPONSE)) return sb.toString();
+            sb.append(line).append('\n');
+        }
+        throw new IOException("Server closed the connection");
+    }
+
+    // Writes the credential index and task files directly, as REGISTER would leave them
+    private static void createUsers(File dataDir, int users, int tasks) throws Exception {
+        dataDir.mkdirs();
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        Base64.Encoder encoder = Base64.getEncoder();
+        byte[] salt = new byte[16];
+        try (PrintWriter index = new PrintWriter(new BufferedWriter(new FileWriter(new File(dataDir, "users.idx"))))) {
+            for (int i = 0; i < users; i++) {
+                String username = "bench_" + i;
+                salt[0] = (byte) i;
+                salt[1] = (byte) (i >> 8);
+                salt[2] = (byte) (i >> 16);
+                digest.update(salt);
+                byte[] hash = digest.digest("bench".getBytes(StandardCharsets.UTF_8));
+                index.println(username + ":" + encoder.encodeToString(salt) + ":" + encoder.encodeToString(hash));
+                BenchmarkData.createUser(dataDir, username, tasks);
+            }
+        }
+    }
+}
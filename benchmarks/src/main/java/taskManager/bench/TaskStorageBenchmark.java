@@ -0,0 +1,75 @@
+package taskManager.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import taskManager.TaskDataManager;
+
+/**
+ * TaskDataManager.addTask / deleteTask / getFormattedTasks against one resident
+ * user holding 10, 1k or 100k tasks. ADD and DELETE return the full task table,
+ * so their cost includes formatting it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TaskStorageBenchmark {
+
+    @Param({ "10", "1000", "100000" })
+    public int taskCount;
+
+    private String user;
+
+    // Task added by the last addTask invocation, or to be removed by the next deleteTask
+    private int taskId;
+
+    @Setup(Level.Trial)
+    public void createUser() throws Exception {
+        user = "bench_storage_" + taskCount;
+        BenchmarkData.createUser(user, taskCount);
+        TaskDataManager.openUser(user);
+        taskId = taskCount;
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteUser() {
+        TaskDataManager.closeUser(user);
+        BenchmarkData.deleteUser(user);
+    }
+
+    @Benchmark
+    public String getFormattedTasks() {
+        return TaskDataManager.getFormattedTasks(user);
+    }
+
+    @Benchmark
+    public String addTask() {
+        return TaskDataManager.addTask(user, "WORK", "2026-01-15", "Benchmark task");
+    }
+
+    // Keep the task count stable: undo each add (not measured)
+    @TearDown(Level.Invocation)
+    public void undoAdd(BenchmarkParams params) {
+        if (params.getBenchmark().endsWith("addTask")) {
+            TaskDataManager.deleteTask(user, String.valueOf(++taskId));
+        }
+    }
+
+    // Give each measured delete a task to remove (not measured)
+    @Setup(Level.Invocation)
+    public void prepareDelete(BenchmarkParams params) {
+        if (params.getBenchmark().endsWith("deleteTask")) {
+            TaskDataManager.addTask(user, "WORK", "2026-01-15", "Benchmark task");
+        }
+    }
+
+    @Benchmark
+    public String deleteTask() {
+        return TaskDataManager.deleteTask(user, String.valueOf(++taskId));
+    }
+}
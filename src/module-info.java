@@ -6,5 +6,6 @@
  */
 module FinalProjectTaskManagement {
 	requires java.logging;
+	requires java.management;
 
 }
\ No newline at end of file
@@ -0,0 +1,145 @@
+package taskManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+
+/**
+ * Optional binary snapshot of a user's tasks (data/<user>.tdb), read through a
+ * memory-mapped buffer. Loading it reads fixed-width records in place instead of
+ * splitting and parsing text lines; each task and its description are still
+ * built once, as resident tasks, since VIEW and SEARCH run on those.
+ * Layout (big-endian):
+ * Header, 16 bytes:  int magic "TSKB" | int version | int nextId | int record count
+ * Records, 20 bytes: int id | byte category ordinal | 3 bytes padding | int epoch day
+ *                    | int description offset | int description length
+ * Description heap:  UTF-8 descriptions, offsets relative to the end of the records
+ *
+ * The text file next to it keeps line 1 and any journal records appended since
+ * the snapshot (see TaskJournal).
+ */
+public class BinaryTaskFile {
+
+    public static final String EXTENSION = ".tdb";
+
+    private static final int MAGIC = 0x54534B42;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 20;
+
+    private final MappedByteBuffer buffer;
+    private final int count;
+    private final int heapStart;
+
+    private BinaryTaskFile(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a binary task file");
+        }
+        int limit = buffer.limit();
+        this.count = buffer.getInt(12);
+        if (count < 0 || HEADER_SIZE + (long) count * RECORD_SIZE > limit) throw new IOException("Truncated binary task file");
+        this.heapStart = HEADER_SIZE + count * RECORD_SIZE;
+        // Checked once here, so the accessors never read outside the mapping
+        for (int i = 0; i < count; i++) {
+            int base = HEADER_SIZE + i * RECORD_SIZE;
+            int offset = buffer.getInt(base + 12);
+            int length = buffer.getInt(base + 16);
+            if (offset < 0 || length < 0 || heapStart + (long) offset + length > limit) {
+                throw new IOException("Description of record " + i + " lies outside the binary task file");
+            }
+        }
+    }
+
+    /**
+     * Maps a snapshot file for reading
+     */
+    public static BinaryTaskFile open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException("Binary task file too large: " + file);
+            // The mapping stays valid after the channel is closed
+            return new BinaryTaskFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public int nextId() {
+        return buffer.getInt(8);
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public int id(int record) {
+        return buffer.getInt(HEADER_SIZE + record * RECORD_SIZE);
+    }
+
+    public int category(int record) {
+        return buffer.get(HEADER_SIZE + record * RECORD_SIZE + 4) & 0xFF;
+    }
+
+    public int epochDay(int record) {
+        return buffer.getInt(HEADER_SIZE + record * RECORD_SIZE + 8);
+    }
+
+    // Decodes a description; the only accessor that allocates
+    public String description(int record) {
+        int base = HEADER_SIZE + record * RECORD_SIZE;
+        byte[] bytes = new byte[buffer.getInt(base + 16)];
+        buffer.get(heapStart + buffer.getInt(base + 12), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Loads every record into a user's resident tasks
+     */
+    void readInto(UserTasks data) throws IOException {
+        data.nextId = Math.max(data.nextId, nextId());
+        for (int i = 0; i < count; i++) {
+            int category = category(i);
+            if (category >= TaskCategory.count()) throw new IOException("Unknown category code " + category + " in binary task file");
+            data.put(new Task(id(i), category, epochDay(i), description(i)));
+        }
+    }
+
+    /**
+     * Writes tasks as a snapshot, through a temp file atomically moved over the target.
+     * Returns the bytes written.
+     */
+    static long write(File file, int nextId, Collection<Task> tasks) throws IOException {
+        int count = tasks.size();
+        ByteBuffer records = ByteBuffer.allocate(HEADER_SIZE + count * RECORD_SIZE);
+        records.putInt(MAGIC).putInt(VERSION).putInt(nextId).putInt(count);
+
+        ByteBuffer heap = ByteBuffer.allocate(Math.max(1024, count * 32));
+        for (Task task : tasks) {
+            byte[] description = task.description.getBytes(StandardCharsets.UTF_8);
+            if (heap.remaining() < description.length) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(heap.capacity() * 2, heap.position() + description.length));
+                heap.flip();
+                heap = larger.put(heap);
+            }
+            records.putInt(task.id).put(task.category).put((byte) 0).putShort((short) 0)
+                    .putInt(task.epochDay).putInt(heap.position()).putInt(description.length);
+            heap.put(description);
+        }
+        records.flip();
+        heap.flip();
+
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (records.hasRemaining() || heap.hasRemaining()) {
+                channel.write(new ByteBuffer[] { records, heap });
+            }
+        }
+        long written = tempFile.length();
+        DurableFiles.replace(tempFile, file);
+        return written;
+    }
+}
@@ -0,0 +1,178 @@
+package taskManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.Charset;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A client socket in thread-per-connection mode, with the timeouts of ConnectionLimits.
+ * readLine() throws SocketTimeoutException when no command arrives within the idle timeout
+ * or a started line isn't finished within the read timeout. Writes to output() that block
+ * longer than the write timeout get the socket closed by a shared watchdog thread, which
+ * frees the worker from a client that stopped reading.
+ */
+class BlockingConnection implements AutoCloseable {
+
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    // Connections with a write in progress are checked this often
+    private static final long WATCHDOG_INTERVAL_MS = 1000;
+
+    private static final Set<BlockingConnection> OPEN = ConcurrentHashMap.newKeySet();
+
+    static {
+        if (ConnectionLimits.WRITE_TIMEOUT_MS > 0) {
+            ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "write-watchdog");
+                thread.setDaemon(true);
+                return thread;
+            });
+            watchdog.scheduleWithFixedDelay(BlockingConnection::closeStalled,
+                    WATCHDOG_INTERVAL_MS, WATCHDOG_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+
+    private final byte[] buffer = new byte[8192];
+    private int position = 0;
+    private int limit = 0;
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+    // System.nanoTime() when the current write started, 0 while not writing
+    private volatile long writeStartedAt = 0;
+
+    BlockingConnection(Socket socket) throws IOException {
+        this.socket = socket;
+        this.in = socket.getInputStream();
+        this.out = new WatchedOutput(socket.getOutputStream());
+        OPEN.add(this);
+    }
+
+    /**
+     * Reads one command line without its line ending; null at the end of the stream.
+     * A line that arrived whole is decoded straight from the read buffer.
+     */
+    String readLine() throws IOException {
+        line.reset();
+        // Bytes already buffered mean the line has started
+        long startedAt = position < limit ? System.nanoTime() : 0;
+        while (true) {
+            if (position == limit) {
+                socket.setSoTimeout(timeoutFor(startedAt));
+                int n = in.read(buffer);
+                if (n < 0) return line.size() > 0 ? line.toString(CHARSET) : null;
+                position = 0;
+                limit = n;
+                if (startedAt == 0) startedAt = System.nanoTime();
+            }
+
+            int start = position;
+            int end = start;
+            while (end < limit && buffer[end] != '\n') {
+                end++;
+            }
+            if (line.size() + end - start > ConnectionLimits.MAX_LINE_LENGTH) throw new IOException("Command line too long");
+            if (end == limit) {
+                // Cut off by the end of the buffer
+                line.write(buffer, start, end - start);
+                position = limit;
+                continue;
+            }
+
+            position = end + 1;
+            if (line.size() == 0) {
+                if (end > start && buffer[end - 1] == '\r') end--;
+                return new String(buffer, start, end - start, CHARSET);
+            }
+            line.write(buffer, start, end - start);
+            String text = line.toString(CHARSET);
+            return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+        }
+    }
+
+    // Socket timeout for the next read: the idle timeout before a line starts, what's left of the read timeout after
+    private static int timeoutFor(long startedAt) throws SocketTimeoutException {
+        if (startedAt == 0) return (int) Math.min(ConnectionLimits.IDLE_TIMEOUT_MS, Integer.MAX_VALUE);
+        if (ConnectionLimits.READ_TIMEOUT_MS <= 0) return 0;
+
+        long left = ConnectionLimits.READ_TIMEOUT_MS - (System.nanoTime() - startedAt) / 1_000_000;
+        if (left <= 0) throw new SocketTimeoutException("Command line not finished in time");
+        return (int) Math.min(left, Integer.MAX_VALUE);
+    }
+
+    OutputStream output() {
+        return out;
+    }
+
+    @Override
+    public void close() throws IOException {
+        OPEN.remove(this);
+        socket.close();
+    }
+
+    // Watchdog thread: drops connections whose write has been blocked too long
+    private static void closeStalled() {
+        long now = System.nanoTime();
+        for (BlockingConnection conn : OPEN) {
+            long startedAt = conn.writeStartedAt;
+            if (startedAt == 0 || now - startedAt < ConnectionLimits.WRITE_TIMEOUT_MS * 1_000_000) continue;
+            ServerMetrics.recordClientTimedOut();
+            try {
+                // A reset discards the unread output; the blocked write fails with a SocketException
+                conn.socket.setSoLinger(true, 0);
+                conn.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    // Marks the time around every write so the watchdog can see one that doesn't return
+    private class WatchedOutput extends OutputStream {
+        private final OutputStream target;
+
+        WatchedOutput(OutputStream target) {
+            this.target = target;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            writeStartedAt = System.nanoTime();
+            try {
+                target.write(b);
+            } finally {
+                writeStartedAt = 0;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            writeStartedAt = System.nanoTime();
+            try {
+                target.write(b, off, len);
+            } finally {
+                writeStartedAt = 0;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            target.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            target.close();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package taskManager;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Spreads users over several server processes.
+ * Every node is started with the same -DtaskManager.nodes=host:port,... list; a user
+ * belongs to the node the ConsistentHashRing picks for their name, and only that
+ * node holds their credentials and tasks. A REGISTER or LOGIN for another node's
+ * user is passed on to it, and the logged-in session is then proxied there line
+ * by line until LOGOUT or disconnect, so clients may connect to any node.
+ *
+ * A node finds itself in the list through -DtaskManager.self=host:port, or else
+ * as the only entry with the server's port. Without taskManager.nodes every user is local.
+ */
+class ClusterRouter {
+
+    private static final Logger logger = Logger.getLogger("practical");
+
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+
+    // How long a proxied command may take on the owning node
+    private static final int READ_TIMEOUT_MS = Integer.getInteger("taskManager.proxyTimeoutMs", 30000);
+
+    private static List<String> nodes = new ArrayList<>();
+    private static ConsistentHashRing ring;
+    private static int self = -1;
+
+    /**
+     * Reads the node list; call once at startup, before taking connections
+     */
+    static synchronized void configure(int port) {
+        String list = System.getProperty("taskManager.nodes", "").trim();
+        if (list.isEmpty()) return;
+
+        List<String> configured = new ArrayList<>();
+        for (String node : list.split(",")) {
+            if (!node.trim().isEmpty()) configured.add(node.trim());
+        }
+
+        String selfName = System.getProperty("taskManager.self");
+        int index = -1;
+        if (selfName != null) {
+            index = configured.indexOf(selfName.trim());
+        } else {
+            for (int i = 0; i < configured.size(); i++) {
+                if (!configured.get(i).endsWith(":" + port)) continue;
+                if (index >= 0) throw new IllegalArgumentException("Several nodes use port " + port + ": set taskManager.self");
+                index = i;
+            }
+        }
+        if (index < 0) throw new IllegalArgumentException("This server isn't in taskManager.nodes: " + list);
+
+        nodes = configured;
+        ring = new ConsistentHashRing(configured);
+        self = index;
+        logger.info("Cluster node " + (self + 1) + " of " + nodes.size() + " (" + nodes.get(self) + ")");
+    }
+
+    /**
+     * Returns true if this node holds the user's data
+     */
+    static synchronized boolean isLocal(String username) {
+        return ring == null || ring.nodeFor(username) == self;
+    }
+
+    /**
+     * Opens a session on the node that holds the user's data
+     */
+    static RemoteSession connect(String username) throws IOException {
+        String node;
+        synchronized (ClusterRouter.class) {
+            node = nodes.get(ring.nodeFor(username));
+        }
+        try {
+            return new RemoteSession(node);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not reach cluster node " + node, e);
+            throw e;
+        }
+    }
+
+    /**
+     * A client session passed on to another node.
+     * Responses are framed by TaskManagementProtocol.END_OF_RESPONSE on both sides,
+     * so the proxy only has to know which lines get no response (inside a BATCH block).
+     */
+    static class RemoteSession implements AutoCloseable {
+
+        private final String node;
+        private final Socket socket;
+        private final BufferedReader reader;
+        private final PrintWriter writer;
+
+        // Between BATCH and END: the owning node answers nothing until END
+        private boolean inBatch = false;
+        private boolean closed = false;
+
+        private RemoteSession(String node) throws IOException {
+            this.node = node;
+            int colon = node.lastIndexOf(':');
+            socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress(node.substring(0, colon),
+                        Integer.parseInt(node.substring(colon + 1))), CONNECT_TIMEOUT_MS);
+                socket.setSoTimeout(READ_TIMEOUT_MS);
+                reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(socket.getOutputStream())));
+                // Skip the greeting
+                readResponse(null);
+            } catch (IOException | RuntimeException e) {
+                socket.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Sends one command and returns its whole response
+         */
+        String call(String line) throws IOException {
+            send(line);
+            StringBuilder sb = new StringBuilder();
+            readResponse(sb);
+            return sb.toString();
+        }
+
+        /**
+         * Sends one line and copies the response, if the line gets one, to out
+         * (without the END_OF_RESPONSE line). Returns false if there was no response.
+         * The session closes itself after a LOGOUT.
+         */
+        boolean relay(String line, PrintWriter out) throws IOException {
+            String command = line.trim().split("\\s+", 2)[0].toUpperCase();
+            boolean answered;
+            if (inBatch) {
+                answered = command.equals("END");
+                inBatch = !answered;
+            } else {
+                inBatch = command.equals("BATCH");
+                answered = !inBatch;
+            }
+            send(line);
+            if (!answered) return false;
+
+            String response;
+            while (!(response = readLine()).equals(TaskManagementProtocol.END_OF_RESPONSE)) {
+                out.println(response);
+            }
+            if (command.equals("LOGOUT")) close();
+            return true;
+        }
+
+        boolean isClosed() {
+            return closed;
+        }
+
+        private void send(String line) throws IOException {
+            writer.println(line);
+            writer.flush();
+            if (writer.checkError()) throw new IOException("Could not send to cluster node " + node);
+        }
+
+        // Reads up to END_OF_RESPONSE, appending the lines to sb if it isn't null
+        private void readResponse(StringBuilder sb) throws IOException {
+            String line;
+            while (!(line = readLine()).equals(TaskManagementProtocol.END_OF_RESPONSE)) {
+                if (sb == null) continue;
+                if (sb.length() > 0) sb.append(System.lineSeparator());
+                sb.append(line);
+            }
+        }
+
+        private String readLine() throws IOException {
+            String line = reader.readLine();
+            if (line == null) throw new EOFException("Cluster node " + node + " closed the connection");
+            return line;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Nothing left to release
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package taskManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shared write-ahead log for the group durability policy (data/commit.log).
+ * A group commit writes the new journal records of every user as
+ * username<TAB>record lines and fsyncs once, however many users and sessions
+ * took part. The user files are then written without fsync; a checkpoint in
+ * TaskDataManager fsyncs them and empties this log.
+ *
+ * Recovery appends each logged record to its user's file again. Replaying a
+ * journal keeps the last record for every task ID, so records that had already
+ * reached the user file (or a compacted snapshot) do no harm.
+ */
+class CommitLog {
+
+    static final File FILE = new File(TaskStore.DATA_DIR, "commit.log");
+
+    private final FileChannel channel;
+
+    CommitLog(File file) throws IOException {
+        this.channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Appends lines and forces them to the disk, returning the bytes written
+     */
+    long append(List<String> lines) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            sb.append(line).append('\n');
+        }
+        ByteBuffer buffer = StandardCharsets.UTF_8.encode(sb.toString());
+        long before = channel.size();
+        try {
+            while (buffer.hasRemaining()) channel.write(buffer);
+            channel.force(false);
+        } catch (IOException e) {
+            // Don't leave a partial line for the next commit to append to
+            channel.truncate(before);
+            throw e;
+        }
+        return channel.size() - before;
+    }
+
+    long size() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * Empties the log once everything in it is safely in the user files
+     */
+    void truncate() throws IOException {
+        channel.truncate(0);
+        channel.force(true);
+    }
+
+    // One log line for a user's journal record
+    static String line(String username, String record) {
+        return username + "\t" + record;
+    }
+
+    /**
+     * Appends every record in the log to its user's file (fsynced) and empties the log.
+     * Records of users that no longer have a file are dropped.
+     * Returns the number of records replayed.
+     */
+    static int recover(File file, TaskStore store) throws IOException {
+        if (!file.exists() || file.length() == 0) return 0;
+
+        String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        // A last line without its newline was torn by a crash mid-write and never acknowledged
+        content = content.substring(0, content.lastIndexOf('\n') + 1);
+
+        Map<String, List<String>> byUser = new LinkedHashMap<>();
+        for (String line : content.split("\n")) {
+            int tab = line.indexOf('\t');
+            if (tab <= 0) continue;
+            byUser.computeIfAbsent(line.substring(0, tab), u -> new ArrayList<>()).add(line.substring(tab + 1));
+        }
+
+        int replayed = 0;
+        for (Map.Entry<String, List<String>> entry : byUser.entrySet()) {
+            // Only the logged users are looked up, rather than listing every task file
+            if (store.size(entry.getKey()) == 0) continue;
+            store.append(entry.getKey(), entry.getValue(), true);
+            replayed += entry.getValue().size();
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(0);
+            channel.force(true);
+        }
+        return replayed;
+    }
+}
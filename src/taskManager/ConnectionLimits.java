@@ -0,0 +1,84 @@
+package taskManager;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits that keep slow or abusive clients from holding up everyone else, in both server modes:
+ *
+ * taskManager.maxConnections        - open connections; more are answered "busy" and closed (default 1000)
+ * taskManager.idleTimeoutMs         - time allowed between commands (default 600000, 0 = none)
+ * taskManager.readTimeoutMs         - time allowed to finish sending a started command line (default 30000)
+ * taskManager.writeTimeoutMs        - time a client may leave its response unread before it is
+ *                                     disconnected (default 10000)
+ * taskManager.maxOutputBytes        - response bytes buffered per connection in nio mode; a client
+ *                                     that lets more than this pile up is disconnected, and no new
+ *                                     command of theirs runs while over half of it is (default 4 MB)
+ * taskManager.userCommandsPerSecond - commands per user per second, over all their sessions
+ *                                     (default 0 = unlimited), with bursts up to
+ * taskManager.userCommandBurst        (default twice the rate)
+ */
+class ConnectionLimits {
+
+    static final int MAX_CONNECTIONS = Integer.getInteger("taskManager.maxConnections", 1000);
+    static final long IDLE_TIMEOUT_MS = Long.getLong("taskManager.idleTimeoutMs", 600_000);
+    static final long READ_TIMEOUT_MS = Long.getLong("taskManager.readTimeoutMs", 30_000);
+    static final long WRITE_TIMEOUT_MS = Long.getLong("taskManager.writeTimeoutMs", 10_000);
+    static final int MAX_OUTPUT_BYTES = Integer.getInteger("taskManager.maxOutputBytes", 4 << 20);
+
+    // Longest command line accepted before the connection is dropped
+    static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    private static final double USER_RATE =
+            Double.parseDouble(System.getProperty("taskManager.userCommandsPerSecond", "0"));
+    private static final double USER_BURST =
+            Double.parseDouble(System.getProperty("taskManager.userCommandBurst", String.valueOf(2 * USER_RATE)));
+
+    static final String BUSY = "Error: The server is at its connection limit. Please try again later.";
+    static final String RATE_LIMITED = "Error: Too many commands. Please slow down.";
+
+    private static final AtomicInteger CONNECTIONS = new AtomicInteger();
+
+    private static final Map<String, TokenBucket> BUCKETS = new ConcurrentHashMap<>();
+
+    /**
+     * Counts a new connection, or returns false (counting nothing) if the limit is reached
+     */
+    static boolean tryOpen() {
+        if (CONNECTIONS.incrementAndGet() <= MAX_CONNECTIONS) return true;
+        CONNECTIONS.decrementAndGet();
+        ServerMetrics.recordConnectionRejected();
+        return false;
+    }
+
+    // Releases a connection counted by tryOpen
+    static void closed() {
+        CONNECTIONS.decrementAndGet();
+    }
+
+    /**
+     * Takes one command from the user's allowance; false if they are over their rate
+     */
+    static boolean allowCommand(String username) {
+        if (USER_RATE <= 0) return true;
+        if (BUCKETS.computeIfAbsent(username, u -> new TokenBucket()).tryTake()) return true;
+        ServerMetrics.recordRateLimited();
+        return false;
+    }
+
+    // Refills at USER_RATE tokens per second up to USER_BURST; one token per command
+    private static final class TokenBucket {
+        private double tokens = Math.max(1, USER_BURST);
+        private long refilledAt = System.nanoTime();
+
+        synchronized boolean tryTake() {
+            long now = System.nanoTime();
+            tokens = Math.min(Math.max(1, USER_BURST), tokens + (now - refilledAt) * USER_RATE / 1e9);
+            refilledAt = now;
+            if (tokens < 1) return false;
+            tokens--;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package taskManager;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Maps keys (usernames) onto a fixed list of nodes with consistent hashing.
+ * Each node is placed on the ring at VIRTUAL_NODES points so keys spread evenly,
+ * and adding or removing a node only moves the keys between it and its neighbours.
+ * Positions come from MD5, so every process with the same node names agrees.
+ */
+class ConsistentHashRing {
+
+    private static final int VIRTUAL_NODES = 100;
+
+    // ring position -> node index
+    private final TreeMap<Integer, Integer> ring = new TreeMap<>();
+    private final int size;
+
+    ConsistentHashRing(List<String> nodeNames) {
+        if (nodeNames.isEmpty()) throw new IllegalArgumentException("A hash ring needs at least one node");
+        this.size = nodeNames.size();
+        for (int node = 0; node < nodeNames.size(); node++) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                ring.put(hash(nodeNames.get(node) + "#" + i), node);
+            }
+        }
+    }
+
+    /**
+     * Returns the index (in the list given to the constructor) of the node that owns key
+     */
+    int nodeFor(String key) {
+        if (size == 1) return 0;
+        Map.Entry<Integer, Integer> entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    private static int hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            return (digest[0] & 0xFF) << 24 | (digest[1] & 0xFF) << 16 | (digest[2] & 0xFF) << 8 | (digest[3] & 0xFF);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 not available", e);
+        }
+    }
+}
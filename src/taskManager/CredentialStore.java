@@ -0,0 +1,379 @@
+package taskManager;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * In-memory index of user credentials, loaded once at startup so LOGIN and
+ * REGISTER checks cost no file I/O.
+ * Passwords are stored as PBKDF2-HMAC-SHA256 hashes in data/users.idx, separate
+ * from the task files (data/ is taskManager.dataDir, see TaskStore). One line per user:
+ * username:salt:hash (salt and hash Base64-encoded)
+ * The salt field starts with the iteration count (4 bytes, big-endian), which is
+ * -DtaskManager.passwordIterations (default 210000) when the hash was made. A bare
+ * 16-byte salt is an older single SHA-256 hash; it still verifies, and is replaced
+ * with a PBKDF2 hash at the user's next successful LOGIN. A user registered again
+ * (such as on that upgrade) is appended once more, and the last line wins. A line
+ * with an empty salt and hash removes the user (see unregister).
+ * PBKDF2 is slow on purpose, which a reconnect storm of LOGINs would pay for once
+ * per attempt. So at most -DtaskManager.passwordHashThreads (default half the
+ * cores) hashes run at once, and a successful LOGIN is remembered, as a keyed
+ * SHA-256 of the password, for the user's next LOGIN with the same password
+ * (up to -DtaskManager.loginCacheSize users, default 10000). Failed LOGINs are
+ * always hashed.
+ *
+ * The index is only ever appended to. Startup reads the UserManifest checkpoint
+ * of it and then just the lines appended since.
+ *
+ * Migration: any <user>.txt (in data/ or the taskManager.dataDirs shards) without
+ * an index entry still has its plaintext password on line 1. At startup that
+ * password is hashed into the index and line 1 of the user file is replaced with
+ * PASSWORD_PLACEHOLDER. A file whose line 1 already is the placeholder has no
+ * password to move and is left alone. The task files
+ * are only listed for this on the first start without a manifest, or with
+ * -DtaskManager.rescanUserFiles=true.
+ */
+public class CredentialStore {
+
+    private static final File DATA_DIR = TaskStore.DATA_DIR;
+    private static final File INDEX_FILE = new File(DATA_DIR, "users.idx");
+
+    // Line 1 of a user file once its password lives in the index
+    public static final String PASSWORD_PLACEHOLDER = "*";
+
+    private static final int SALT_BYTES = 16;
+
+    private static final int ITERATIONS = Math.max(1, Integer.getInteger("taskManager.passwordIterations", 210_000));
+
+    // Stored iteration counts above this are taken for corruption
+    private static final int MAX_ITERATIONS = 10_000_000;
+
+    private static final int HASH_BITS = 256;
+
+    private static final boolean RESCAN_USER_FILES = Boolean.getBoolean("taskManager.rescanUserFiles");
+
+    private static final Logger logger = Logger.getLogger("practical");
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static final Semaphore HASH_PERMITS = new Semaphore(Math.max(1, Integer.getInteger("taskManager.passwordHashThreads",
+            Runtime.getRuntime().availableProcessors() / 2)), true);
+
+    private static final int LOGIN_CACHE_SIZE = Integer.getInteger("taskManager.loginCacheSize", 10_000);
+
+    // Per-process key of the login cache digests
+    private static final byte[] LOGIN_CACHE_KEY = new byte[32];
+
+    // Hashed against for unknown users, so they take as long as known ones
+    private static final byte[] DUMMY_SALT = newSalt();
+
+    // username -> their last successful LOGIN; only valid while entry is still theirs
+    private static final ConcurrentHashMap<String, Verified> VERIFIED = new ConcurrentHashMap<>();
+
+    private static final class Verified {
+        final UserManifest.Entry entry;
+        final byte[] digest;
+
+        Verified(UserManifest.Entry entry, byte[] digest) {
+            this.entry = entry;
+            this.digest = digest;
+        }
+    }
+
+    static {
+        RANDOM.nextBytes(LOGIN_CACHE_KEY);
+        DATA_DIR.mkdirs();
+        long indexed = UserManifest.load(INDEX_FILE.length());
+        loadIndex(Math.max(0, indexed));
+        if (indexed < 0 || RESCAN_USER_FILES) migrateUserFiles();
+        UserManifest.complete();
+        if (indexed < 0) {
+            // First start with this index: write the manifest now, so the next start can use it
+            try {
+                UserManifest.save();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not write " + UserManifest.FILE, e);
+            }
+        }
+    }
+
+    /**
+     * Returns true if a user with this name is registered
+     */
+    public static boolean exists(String username) {
+        return UserManifest.get(username) != null;
+    }
+
+    /**
+     * Checks a password against the stored salted hash
+     */
+    public static boolean verify(String username, String password) {
+        UserManifest.Entry entry = UserManifest.get(username);
+        if (entry == null) {
+            hash(DUMMY_SALT, password);
+            return false;
+        }
+        byte[] salt = entry.salt();
+        if (salt.length == SALT_BYTES) {
+            if (!MessageDigest.isEqual(entry.hash(), legacyHash(salt, password))) return false;
+            upgrade(username, password);
+            return true;
+        }
+
+        byte[] digest = loginDigest(username, password);
+        Verified verified = VERIFIED.get(username);
+        if (verified != null && verified.entry == entry && MessageDigest.isEqual(verified.digest, digest)) return true;
+
+        byte[] hash = hash(salt, password);
+        if (hash == null || !MessageDigest.isEqual(entry.hash(), hash)) return false;
+        if (VERIFIED.size() >= LOGIN_CACHE_SIZE) {
+            // Full: makes room by dropping whichever user comes first
+            Iterator<String> users = VERIFIED.keySet().iterator();
+            if (users.hasNext()) VERIFIED.remove(users.next());
+        }
+        if (LOGIN_CACHE_SIZE > 0) VERIFIED.put(username, new Verified(entry, digest));
+        return true;
+    }
+
+    // What the login cache keeps of a password: SHA-256 of the process key, username and password
+    private static byte[] loginDigest(String username, String password) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(LOGIN_CACHE_KEY);
+            digest.update(username.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            return digest.digest(password.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    // Replaces a user's single SHA-256 hash with a PBKDF2 one, once they logged in with the password
+    private static void upgrade(String username, String password) {
+        byte[] salt = newSalt();
+        byte[] hash = hash(salt, password);
+        try {
+            synchronized (CredentialStore.class) {
+                UserManifest.Entry entry = UserManifest.get(username);
+                if (entry == null || entry.salt().length != SALT_BYTES) return;
+                long indexLength = appendToIndex(username, salt, hash);
+                UserManifest.add(username, salt, hash, false, indexLength);
+            }
+        } catch (IOException e) {
+            // The old hash stays, and the next LOGIN tries again
+            logger.log(Level.WARNING, "Could not upgrade the password hash of " + username, e);
+        }
+    }
+
+    /**
+     * Adds a user to the index and persists it.
+     * Returns false if the username is already taken.
+     */
+    public static boolean register(String username, String password) throws IOException {
+        return register(username, password, true);
+    }
+
+    // empty: a new user, who has no tasks yet (rather than one migrated with their task file)
+    private static boolean register(String username, String password, boolean empty) throws IOException {
+        if (exists(username)) return false;
+        // Hashed before taking the lock, since it is the slow part
+        byte[] salt = newSalt();
+        byte[] hash = hash(salt, password);
+        return add(username, salt, hash, empty);
+    }
+
+    private static synchronized boolean add(String username, byte[] salt, byte[] hash, boolean empty) throws IOException {
+        if (exists(username)) return false;
+        // Visible to LOGIN only once it is on disk
+        long indexLength = appendToIndex(username, salt, hash);
+        UserManifest.add(username, salt, hash, empty, indexLength);
+        return true;
+    }
+
+    /**
+     * Removes a user whose registration could not be completed, such as when
+     * their task file couldn't be created
+     */
+    static synchronized void unregister(String username) {
+        if (!exists(username)) return;
+        try {
+            long indexLength = appendToIndex(username, new byte[0], new byte[0]);
+            UserManifest.remove(username, indexLength);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not remove the index entry of " + username, e);
+        }
+    }
+
+    /**
+     * A user's index entry without the name (salt:hash, Base64), for replication; null if not registered
+     */
+    static String credentials(String username) {
+        UserManifest.Entry entry = UserManifest.get(username);
+        if (entry == null) return null;
+        Base64.Encoder encoder = Base64.getEncoder();
+        return encoder.encodeToString(entry.salt()) + ":" + encoder.encodeToString(entry.hash());
+    }
+
+    /**
+     * Adds a user registered on the primary, with their credentials as credentials() gave them.
+     * Returns false if the username is already taken here.
+     */
+    static boolean registerReplicated(String username, String credentials, boolean empty) throws IOException {
+        int colon = credentials.indexOf(':');
+        byte[] salt;
+        byte[] hash;
+        try {
+            salt = Base64.getDecoder().decode(credentials.substring(0, colon));
+            hash = Base64.getDecoder().decode(credentials.substring(colon + 1));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Corrupt credentials for " + username, e);
+        }
+        return add(username, salt, hash, empty);
+    }
+
+    /**
+     * Returns the number of registered users
+     */
+    public static int userCount() {
+        return UserManifest.size();
+    }
+
+    // The iteration count followed by random bytes
+    private static byte[] newSalt() {
+        byte[] salt = new byte[4 + SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        ByteBuffer.wrap(salt).putInt(ITERATIONS);
+        return salt;
+    }
+
+    // PBKDF2 of the password with a stored salt, at the iteration count it holds; null if that count is corrupt
+    private static byte[] hash(byte[] salt, String password) {
+        if (salt.length <= 4) return null;
+        int iterations = ByteBuffer.wrap(salt).getInt();
+        if (iterations <= 0 || iterations > MAX_ITERATIONS) return null;
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), Arrays.copyOfRange(salt, 4, salt.length), iterations, HASH_BITS);
+        // Waits for a permit, so hashing can't take every core from the other commands
+        HASH_PERMITS.acquireUninterruptibly();
+        try {
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("PBKDF2WithHmacSHA256 not available", e);
+        } finally {
+            HASH_PERMITS.release();
+            spec.clearPassword();
+        }
+    }
+
+    // Hashes made before PBKDF2: one SHA-256 of salt and password
+    private static byte[] legacyHash(byte[] salt, String password) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(salt);
+            return digest.digest(password.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    // Registrations are rare, so each one is fsynced. Returns the index length afterwards.
+    private static long appendToIndex(String username, byte[] salt, byte[] hash) throws IOException {
+        Base64.Encoder encoder = Base64.getEncoder();
+        try (FileOutputStream stream = new FileOutputStream(INDEX_FILE, true);
+             PrintWriter pw = new PrintWriter(new OutputStreamWriter(stream))) {
+            pw.println(username + ":" + encoder.encodeToString(salt) + ":" + encoder.encodeToString(hash));
+            pw.flush();
+            if (pw.checkError()) throw new IOException("Could not write " + INDEX_FILE);
+            stream.getFD().sync();
+            return stream.getChannel().size();
+        }
+    }
+
+    // Reads the index from the given byte offset on
+    private static void loadIndex(long from) {
+        long length = INDEX_FILE.length();
+        if (from >= length) return;
+
+        Base64.Decoder decoder = Base64.getDecoder();
+        try (FileInputStream stream = new FileInputStream(INDEX_FILE);
+             BufferedReader br = new BufferedReader(new InputStreamReader(stream))) {
+            stream.getChannel().position(from);
+            String line;
+            while ((line = br.readLine()) != null) {
+                // Split from the right: usernames may contain ':'
+                int hashStart = line.lastIndexOf(':');
+                int saltStart = hashStart > 0 ? line.lastIndexOf(':', hashStart - 1) : -1;
+                if (saltStart <= 0) continue;
+                try {
+                    byte[] salt = decoder.decode(line.substring(saltStart + 1, hashStart));
+                    byte[] hash = decoder.decode(line.substring(hashStart + 1));
+                    if (salt.length > 255 || hash.length > 255) continue;
+                    if (salt.length == 0 && hash.length == 0) {
+                        UserManifest.remove(line.substring(0, saltStart), length);
+                    } else {
+                        UserManifest.add(line.substring(0, saltStart), salt, hash, false, length);
+                    }
+                } catch (IllegalArgumentException e) {
+                    // Corrupt entry, skip
+                }
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not read credential index", e);
+        }
+    }
+
+    // Moves plaintext passwords from user files that predate the index into it,
+    // in every directory of the configured store (taskManager.dataDirs shards included)
+    private static void migrateUserFiles() {
+        TaskStore store = TaskStore.configured();
+        for (String username : store.usernames()) {
+            if (exists(username)) continue;
+            File file = store.textFile(username);
+            if (!file.exists()) {
+                // Listed from another shard than the one it hashes to: the dataDirs list changed
+                logger.warning("Task file of " + username + " is not in its data directory " + file.getParent() + ", not migrated");
+                continue;
+            }
+
+            try {
+                String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+                int lineEnd = content.indexOf('\n');
+                String password = (lineEnd < 0 ? content : content.substring(0, lineEnd)).replace("\r", "");
+                if (password.isEmpty()) continue;
+                if (password.equals(PASSWORD_PLACEHOLDER)) {
+                    // Left by a registration that never reached the index: there is no password to move
+                    logger.warning("Task file of " + username + " has no password and no index entry, not migrated;"
+                            + " delete " + file + " to free the name");
+                    continue;
+                }
+
+                if (!register(username, password, false)) continue;
+
+                // Index entry is on disk - now drop the plaintext copy
+                File tempFile = new File(file.getParentFile(), username + ".migrate");
+                try (Writer writer = new BufferedWriter(new FileWriter(tempFile))) {
+                    writer.write(PASSWORD_PLACEHOLDER + System.lineSeparator());
+                    if (lineEnd >= 0) writer.write(content.substring(lineEnd + 1));
+                }
+                DurableFiles.replace(tempFile, file);
+                logger.info("Migrated credentials for " + username + " to the index");
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not migrate credentials for " + username, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package taskManager;
+
+/**
+ * How far an ADD / DELETE / BATCH must get towards the disk before it is answered,
+ * set with -DtaskManager.durability:
+ *
+ * group  - (default) the change is written to the shared commit log (data/commit.log)
+ *          by the next group commit: one fsync for every change made by any user by the
+ *          time it starts. A commit starts as soon as the previous one is done, so changes
+ *          made during an fsync share the next; taskManager.groupCommitMs (default 0)
+ *          adds a wait before each commit to gather more. User files are appended without
+ *          fsync and checkpointed once the log reaches taskManager.commitLogBytes (4 MB)
+ * per-op - every change is appended and fsynced before it is answered
+ * os     - changes are answered at once and appended every taskManager.flushIntervalMs
+ *          without fsync, leaving it to the OS when they reach the disk
+ */
+enum DurabilityPolicy {
+
+    OS, GROUP, PER_OP;
+
+    static DurabilityPolicy configured() {
+        String name = System.getProperty("taskManager.durability", "group").trim();
+        for (DurabilityPolicy policy : values()) {
+            if (policy.name().replace('_', '-').equalsIgnoreCase(name)) return policy;
+        }
+        throw new IllegalArgumentException("Unknown taskManager.durability: " + name + " (use group, per-op or os)");
+    }
+
+    // True if changes are fsynced before they are answered
+    boolean syncs() {
+        return this != OS;
+    }
+}
@@ -0,0 +1,53 @@
+package taskManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Crash-safe file replacement: a file is rewritten by writing a temp file next to
+ * it and moving that over the original, so a crash leaves either the old or the
+ * new file and never a half-written or missing one.
+ */
+class DurableFiles {
+
+    /**
+     * Moves a fully written temp file over target.
+     * The temp file is fsynced first, then renamed with ATOMIC_MOVE (a plain replace
+     * where the file system can't do that), then the directory entry is fsynced.
+     */
+    static void replace(File temp, File target) throws IOException {
+        sync(temp);
+        try {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        syncDirectory(target.getAbsoluteFile().getParentFile());
+    }
+
+    /**
+     * Forces a file's contents to the disk
+     */
+    static void sync(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Forces a directory's entries (new and renamed files) to the disk.
+     * Best effort: some platforms can't open a directory for this.
+     */
+    static void syncDirectory(File dir) {
+        try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not supported here (e.g. Windows); the rename itself is still atomic
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package taskManager;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps each user's tasks in <dir>/<user>.txt (plus <user>.tdb for a binary
+ * snapshot), in the layout described in TaskJournal.
+ */
+class FileTaskStore implements TaskStore {
+
+    private final File dir;
+
+    FileTaskStore(File dir) {
+        this.dir = dir;
+        dir.mkdirs();
+    }
+
+    @Override
+    public File textFile(String username) {
+        return new File(dir, username + ".txt");
+    }
+
+    @Override
+    public boolean create(String username) throws IOException {
+        File file = textFile(username);
+        // createNewFile is atomic, so two concurrent registrations can't both win
+        if (!file.createNewFile()) return false;
+
+        try {
+            try (PrintWriter pw = new PrintWriter(new FileWriter(file))) {
+                pw.println(CredentialStore.PASSWORD_PLACEHOLDER);
+                pw.println("nextId:1");
+                if (pw.checkError()) throw new IOException("Could not write " + file);
+            }
+            DurableFiles.sync(file);
+            DurableFiles.syncDirectory(dir);
+        } catch (IOException e) {
+            file.delete();
+            throw e;
+        }
+        return true;
+    }
+
+    @Override
+    public void delete(String username) {
+        File file = textFile(username);
+        TaskJournal.snapshotFile(file).delete();
+        file.delete();
+    }
+
+    @Override
+    public UserTasks load(String username) throws IOException {
+        return TaskJournal.load(textFile(username));
+    }
+
+    @Override
+    public UserTasks loadUnindexed(String username) throws IOException {
+        return TaskJournal.load(textFile(username), false);
+    }
+
+    @Override
+    public long append(String username, List<String> records, boolean sync) throws IOException {
+        return TaskJournal.append(textFile(username), records, sync);
+    }
+
+    @Override
+    public void sync(String username) throws IOException {
+        DurableFiles.sync(textFile(username));
+    }
+
+    @Override
+    public long compact(String username, UserTasks data, boolean binary) throws IOException {
+        File file = textFile(username);
+        return binary ? TaskJournal.compactToBinary(file, data) : TaskJournal.compact(file, data);
+    }
+
+    @Override
+    public long size(String username) {
+        File file = textFile(username);
+        return file.length() + TaskJournal.snapshotFile(file).length();
+    }
+
+    @Override
+    public List<String> usernames() {
+        List<String> usernames = new ArrayList<>();
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".txt"));
+        if (files != null) {
+            for (File file : files) {
+                usernames.add(file.getName().substring(0, file.getName().length() - ".txt".length()));
+            }
+        }
+        return usernames;
+    }
+
+    @Override
+    public String toString() {
+        return dir.getPath();
+    }
+}
@@ -0,0 +1,77 @@
+package taskManager;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Group commit: sessions that have changed tasks call awaitCommit(), and a single
+ * committer thread writes and fsyncs everything pending in one go, then
+ * releases every session that was waiting for it.
+ * Under load many changes share one commit instead of each paying for its own fsync.
+ */
+class GroupCommitter {
+
+    private final long windowMs;
+    private final BooleanSupplier commit;
+
+    // Commit numbers: the highest one a session waits for, the last one started and the last one done
+    private long requested = 0;
+    private long started = 0;
+    private long completed = 0;
+    private boolean lastCommitOk = true;
+
+    /**
+     * commit writes out every pending change and returns false if any of it failed
+     */
+    GroupCommitter(long windowMs, BooleanSupplier commit) {
+        this.windowMs = windowMs;
+        this.commit = commit;
+        Thread thread = new Thread(this::run, "task-group-commit");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Blocks until a commit that started after this call has finished, so every
+     * change the caller made before calling is on disk.
+     * Returns false if that commit failed (the changes stay pending and are retried).
+     */
+    synchronized boolean awaitCommit() {
+        long ticket = started + 1;
+        if (requested < ticket) {
+            requested = ticket;
+            notifyAll();
+        }
+        try {
+            while (completed < ticket) wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return lastCommitOk;
+    }
+
+    private void run() {
+        while (true) {
+            try {
+                synchronized (this) {
+                    while (requested <= started) wait();
+                }
+                // Let more changes join this commit
+                if (windowMs > 0) Thread.sleep(windowMs);
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            long number;
+            synchronized (this) {
+                number = ++started;
+            }
+            boolean ok = commit.getAsBoolean();
+            synchronized (this) {
+                completed = number;
+                lastCommitOk = ok;
+                notifyAll();
+            }
+        }
+    }
+}
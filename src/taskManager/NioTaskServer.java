@@ -0,0 +1,576 @@
+package taskManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Non-blocking server mode. One selector thread owns every socket and a fixed
+ * pool of worker threads runs the commands, so an idle session costs a
+ * registered channel and a small buffer instead of a whole thread.
+ * Commands from one connection still run one at a time and in order, and the
+ * line protocol is the same as in the thread-per-connection mode.
+ * ConnectionLimits apply here too: the selector thread drops connections that are
+ * idle or stalled, or whose queued output passes its limit. No worker waits for a
+ * slow reader: a connection with over half that limit queued runs no further
+ * command until the client catches up, and one that has too many commands or too
+ * much output backed up isn't read from meanwhile.
+ * Responses are encoded straight into pooled direct buffers, which the selector
+ * thread hands to the socket several at a time with gathering writes.
+ */
+public class NioTaskServer {
+
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    // Output is handed to the selector thread in chunks of this size while a response is streamed
+    private static final int OUTPUT_CHUNK_SIZE = 8192;
+
+    // Chars encoded at a time by a ChunkedWriter
+    private static final int STAGE_CHARS = 4096;
+
+    // Most chunks passed to one gathering write
+    private static final int MAX_GATHER = 16;
+
+    // Direct buffers kept for reuse once written (-DtaskManager.pooledOutputBuffers, default 1024 = 8 MB);
+    // more are allocated when needed and left to the garbage collector
+    private static final ArrayBlockingQueue<ByteBuffer> BUFFER_POOL =
+            new ArrayBlockingQueue<>(Math.max(1, Integer.getInteger("taskManager.pooledOutputBuffers", 1024)));
+
+    // Queued output above which a connection runs no further command until the client has read some
+    private static final long OUTPUT_RESUME_BYTES = ConnectionLimits.MAX_OUTPUT_BYTES / 2;
+
+    // Command lines read ahead of the worker before the connection stops reading
+    private static final int MAX_QUEUED_COMMANDS = 64;
+
+    // How often the selector thread looks for timed out connections
+    private static final long SCAN_INTERVAL_MS = 1000;
+
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    private final Selector selector;
+    private final ThreadPoolExecutor workers;
+    private final Logger logger;
+
+    // Connections with new output, waiting for the selector thread to enable OP_WRITE
+    private final Queue<Connection> writeRequests = new ConcurrentLinkedQueue<>();
+
+    // Connections whose backlog a worker has worked off, waiting for the selector thread to enable OP_READ
+    private final Queue<Connection> readRequests = new ConcurrentLinkedQueue<>();
+
+    public NioTaskServer(int port, int workerThreads, Logger logger) throws IOException {
+        this.logger = logger;
+        this.selector = Selector.open();
+        this.workers = new ThreadPoolExecutor(workerThreads, workerThreads,
+                0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+        // Accepting never waits here; what waits is connections with commands queued for a worker
+        ServerMetrics.setAcceptQueue(() -> workers.getQueue().size());
+
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    // Runs the selector loop on the calling thread
+    public void run() throws IOException {
+        long lastScan = System.nanoTime();
+        while (true) {
+            selector.select(SCAN_INTERVAL_MS);
+
+            long now = System.nanoTime();
+            if (now - lastScan >= SCAN_INTERVAL_MS * 1_000_000) {
+                lastScan = now;
+                closeTimedOut(now);
+            }
+
+            Connection pending;
+            while ((pending = writeRequests.poll()) != null) {
+                pending.enableWrite();
+            }
+            while ((pending = readRequests.poll()) != null) {
+                pending.enableRead();
+            }
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (!key.isValid()) continue;
+
+                if (key.isAcceptable()) {
+                    accept((ServerSocketChannel) key.channel());
+                    continue;
+                }
+
+                Connection conn = (Connection) key.attachment();
+                try {
+                    if (key.isReadable()) conn.read();
+                    if (key.isValid() && key.isWritable()) conn.write();
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Client communication error", e);
+                    conn.close();
+                }
+            }
+        }
+    }
+
+    // Selector thread: drops connections that are idle, slow sending a line or not reading
+    private void closeTimedOut(long now) {
+        for (SelectionKey key : selector.keys()) {
+            if (!(key.attachment() instanceof Connection)) continue;
+            Connection conn = (Connection) key.attachment();
+            if (key.isValid() && conn.timedOut(now)) {
+                ServerMetrics.recordClientTimedOut();
+                conn.abort();
+            }
+        }
+    }
+
+    private void accept(ServerSocketChannel serverChannel) {
+        try {
+            SocketChannel channel = serverChannel.accept();
+            if (channel == null) return;
+            channel.configureBlocking(false);
+            // Responses leave in whole chunks already; Nagle would only hold back the last one of a pipeline
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            if (!ConnectionLimits.tryOpen()) {
+                // One framed error, written without waiting for the client, then close
+                String nl = System.lineSeparator();
+                channel.write(CHARSET.encode(ConnectionLimits.BUSY + nl + TaskManagementProtocol.END_OF_RESPONSE + nl));
+                channel.close();
+                return;
+            }
+            Connection conn = new Connection(channel);
+            conn.key = channel.register(selector, SelectionKey.OP_READ, conn);
+            ServerMetrics.sessionOpened();
+            // No worker can be using the writer yet: nothing has been read
+            TaskManagementProtocol.writeGreeting(conn.writer);
+            conn.writer.flush();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Client accept failed", e);
+        }
+    }
+
+    // Heap buffers a thread encodes through before the bytes are copied into a direct chunk:
+    // the encoders' fast path needs arrays on both sides, and workers are few where connections are many
+    private static final class Staging {
+        final char[] chars = new char[STAGE_CHARS];
+        final ByteBuffer bytes = ByteBuffer.allocate((int) Math.ceil(CHARSET.newEncoder().maxBytesPerChar() * STAGE_CHARS));
+    }
+
+    private static final ThreadLocal<Staging> STAGING = ThreadLocal.withInitial(Staging::new);
+
+    private static ByteBuffer takeBuffer() {
+        ByteBuffer buffer = BUFFER_POOL.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(OUTPUT_CHUNK_SIZE);
+    }
+
+    private static void releaseBuffer(ByteBuffer buffer) {
+        buffer.clear();
+        BUFFER_POOL.offer(buffer);
+    }
+
+    /**
+     * One client connection. Reads and writes happen on the selector thread;
+     * commands run on a worker thread, at most one worker per connection at a time.
+     */
+    private class Connection {
+        final SocketChannel channel;
+        SelectionKey key;
+
+        final TaskManagementProtocol.ClientSession session = new TaskManagementProtocol.ClientSession();
+        final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        final ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+        final Queue<String> commands = new ConcurrentLinkedQueue<>();
+        // REMINDER pushes, written by the worker between two responses
+        final Queue<String> pushes = new ConcurrentLinkedQueue<>();
+        final Queue<ByteBuffer> output = new ConcurrentLinkedQueue<>();
+        final AtomicLong queuedBytes = new AtomicLong();
+
+        // Worker threads write responses here; full chunks are queued for the selector as they fill
+        final PrintWriter writer = new PrintWriter(new ChunkedWriter());
+
+        // Selector thread: the chunks of one gathering write
+        final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+
+        // Guarded by this
+        boolean running = false;
+        boolean ended = false;
+        // OP_READ is off until the backlog is worked off
+        boolean readPaused = false;
+
+        volatile boolean inputClosed = false;
+        volatile boolean closing = false;
+        volatile boolean closed = false;
+        volatile boolean overflowed = false;
+
+        // System.nanoTime() of the last complete command line or fully written response
+        volatile long lastActivityAt = System.nanoTime();
+        // When the current partial command line started (selector thread only)
+        long lineStartedAt = 0;
+        // When queued output was last added to an empty queue or partly written
+        volatile long lastWriteProgressAt = System.nanoTime();
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+            session.pusher = this::push;
+        }
+
+        // Reminder thread: queue a push for the next drain
+        void push(String frame) {
+            if (closing || closed) return;
+            pushes.add(frame);
+            schedule();
+        }
+
+        // Selector thread: split incoming bytes into command lines
+        void read() throws IOException {
+            int n = channel.read(readBuffer);
+            if (n < 0) {
+                inputClosed = true;
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                schedule();
+                return;
+            }
+
+            // Lines are decoded straight from the read buffer; only a line cut off by its end is copied
+            byte[] bytes = readBuffer.array();
+            int end = readBuffer.position();
+            int start = 0;
+            for (int i = 0; i < end; i++) {
+                if (bytes[i] != '\n') continue;
+                if (partialLine.size() + i - start > ConnectionLimits.MAX_LINE_LENGTH) {
+                    throw new IOException("Command line too long");
+                }
+                commands.add(lineOf(bytes, start, i));
+                start = i + 1;
+                lastActivityAt = System.nanoTime();
+            }
+            if (start < end) {
+                if (partialLine.size() == 0) lineStartedAt = System.nanoTime();
+                partialLine.write(bytes, start, end - start);
+                if (partialLine.size() > ConnectionLimits.MAX_LINE_LENGTH) {
+                    throw new IOException("Command line too long");
+                }
+            }
+            readBuffer.clear();
+            synchronized (this) {
+                if (backedUp()) readPaused = true;
+            }
+            if (readPaused) key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            schedule();
+        }
+
+        // True while the client is far enough ahead of its responses that reading more would only buffer it
+        private boolean backedUp() {
+            return commands.size() >= MAX_QUEUED_COMMANDS || queuedBytes.get() > OUTPUT_RESUME_BYTES;
+        }
+
+        // Any thread: reading goes on once the backlog is worked off
+        void resumeReadIfCaughtUp() {
+            synchronized (this) {
+                if (!readPaused || backedUp()) return;
+                readPaused = false;
+            }
+            readRequests.add(this);
+            selector.wakeup();
+        }
+
+        // Selector thread
+        void enableRead() {
+            synchronized (this) {
+                if (readPaused || inputClosed) return;
+            }
+            if (key.isValid()) key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+        }
+
+        // The line ending at bytes[end] ('\n'), after whatever of it an earlier read left in partialLine
+        private String lineOf(byte[] bytes, int start, int end) {
+            if (end > start && bytes[end - 1] == '\r') end--;
+            if (partialLine.size() == 0) return new String(bytes, start, end - start, CHARSET);
+
+            partialLine.write(bytes, start, end - start);
+            String line = partialLine.toString(CHARSET);
+            partialLine.reset();
+            // The '\r' came at the end of the previous read
+            return line.endsWith("\r") ? line.substring(0, line.length() - 1) : line;
+        }
+
+        // Hands the connection to a worker unless one is already draining it
+        void schedule() {
+            synchronized (this) {
+                if (running || (commands.isEmpty() && pushes.isEmpty() && !inputClosed)) return;
+                running = true;
+            }
+            workers.execute(this::drain);
+        }
+
+        // Worker thread: run queued commands in order, writing any pushes between them.
+        // Gives the connection up while the client is behind on reading; write() schedules it again.
+        void drain() {
+            while (true) {
+                synchronized (this) {
+                    if (!closed && queuedBytes.get() > OUTPUT_RESUME_BYTES) {
+                        running = false;
+                        return;
+                    }
+                }
+                String frame;
+                while ((frame = pushes.poll()) != null) {
+                    TaskManagementProtocol.writePush(frame, writer);
+                    writer.flush();
+                }
+                String line = commands.poll();
+                if (line != null) {
+                    TaskManagementProtocol.processLine(line, session, writer);
+                    writer.flush();
+                    resumeReadIfCaughtUp();
+                    continue;
+                }
+                synchronized (this) {
+                    if (commands.isEmpty() && pushes.isEmpty()) {
+                        running = false;
+                        break;
+                    }
+                }
+            }
+
+            if (inputClosed) {
+                synchronized (this) {
+                    if (ended) return;
+                    ended = true;
+                }
+                TaskManagementProtocol.endSession(session);
+                ServerMetrics.sessionClosed();
+                ConnectionLimits.closed();
+                closing = true;
+                requestWrite();
+            }
+        }
+
+        void requestWrite() {
+            writeRequests.add(this);
+            selector.wakeup();
+        }
+
+        // Encodes written text into pooled direct buffers and queues them for the selector thread a chunk
+        // at a time. Holds no buffer between responses: one is taken at the first write after a flush.
+        class ChunkedWriter extends Writer {
+            private final CharsetEncoder encoder = CHARSET.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            private ByteBuffer chunk = null;
+            // A high surrogate that ended the last write, encoded together with the next char
+            private char carry;
+            private boolean carrying = false;
+
+            @Override
+            public void write(String text, int off, int len) {
+                Staging staging = STAGING.get();
+                while (len > 0) {
+                    int start = startStaging(staging);
+                    int n = Math.min(len, STAGE_CHARS - start);
+                    text.getChars(off, off + n, staging.chars, start);
+                    encodeStaged(staging, start + n);
+                    off += n;
+                    len -= n;
+                }
+            }
+
+            @Override
+            public void write(char[] chars, int off, int len) {
+                Staging staging = STAGING.get();
+                while (len > 0) {
+                    int start = startStaging(staging);
+                    int n = Math.min(len, STAGE_CHARS - start);
+                    System.arraycopy(chars, off, staging.chars, start, n);
+                    encodeStaged(staging, start + n);
+                    off += n;
+                    len -= n;
+                }
+            }
+
+            @Override
+            public void write(int c) {
+                write(new char[] { (char) c }, 0, 1);
+            }
+
+            // Puts a carried high surrogate first; returns where the new chars go
+            private int startStaging(Staging staging) {
+                if (!carrying) return 0;
+                carrying = false;
+                staging.chars[0] = carry;
+                return 1;
+            }
+
+            // Encodes the first count staged chars, between heap arrays, and copies the bytes into chunks
+            private void encodeStaged(Staging staging, int count) {
+                CharBuffer in = CharBuffer.wrap(staging.chars, 0, count);
+                ByteBuffer bytes = staging.bytes;
+                bytes.clear();
+                encoder.encode(in, bytes, false);
+                if (in.hasRemaining()) {
+                    carry = in.get();
+                    carrying = true;
+                }
+
+                byte[] array = bytes.array();
+                int position = 0;
+                int end = bytes.position();
+                while (position < end) {
+                    if (chunk == null) chunk = takeBuffer();
+                    int n = Math.min(end - position, chunk.remaining());
+                    chunk.put(array, position, n);
+                    position += n;
+                    if (!chunk.hasRemaining()) queueChunk();
+                }
+            }
+
+            @Override
+            public void flush() {
+                if (chunk == null) return;
+                if (chunk.position() == 0) {
+                    releaseBuffer(chunk);
+                    chunk = null;
+                    return;
+                }
+                queueChunk();
+            }
+
+            private void queueChunk() {
+                ByteBuffer full = chunk;
+                chunk = null;
+                if (closed || overflowed) {
+                    // Nobody left to read it
+                    releaseBuffer(full);
+                    return;
+                }
+                full.flip();
+                if (output.isEmpty()) lastWriteProgressAt = System.nanoTime();
+                output.add(full);
+                if (queuedBytes.addAndGet(full.limit()) > ConnectionLimits.MAX_OUTPUT_BYTES) {
+                    // The rest of the response is dropped, and the selector thread closes the connection
+                    overflowed = true;
+                    ServerMetrics.recordOutputOverflow();
+                }
+                requestWrite();
+            }
+
+            @Override
+            public void close() {
+                flush();
+            }
+        }
+
+        // Selector thread: true if the connection has been idle, or stalled sending a line or reading output
+        boolean timedOut(long now) {
+            if (!output.isEmpty()) {
+                // An overflowed one is being closed already
+                return !overflowed && expired(lastWriteProgressAt, ConnectionLimits.WRITE_TIMEOUT_MS, now);
+            }
+            if (partialLine.size() > 0) return expired(lineStartedAt, ConnectionLimits.READ_TIMEOUT_MS, now);
+            synchronized (this) {
+                if (running || !commands.isEmpty()) return false;
+            }
+            return expired(lastActivityAt, ConnectionLimits.IDLE_TIMEOUT_MS, now);
+        }
+
+        private boolean expired(long since, long timeoutMs, long now) {
+            return timeoutMs > 0 && now - since > timeoutMs * 1_000_000;
+        }
+
+        // Selector thread
+        void enableWrite() {
+            if (overflowed) {
+                abort();
+                return;
+            }
+            if (key.isValid()) key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        }
+
+        // Selector thread: write as much queued output as the socket takes, several chunks per call
+        void write() throws IOException {
+            while (true) {
+                int count = 0;
+                for (ByteBuffer buffer : output) {
+                    gather[count++] = buffer;
+                    if (count == gather.length) break;
+                }
+                if (count == 0) break;
+
+                if (channel.write(gather, 0, count) > 0) lastWriteProgressAt = System.nanoTime();
+                int done = 0;
+                long written = 0;
+                while (done < count && !gather[done].hasRemaining()) {
+                    output.poll();
+                    written += gather[done].limit();
+                    releaseBuffer(gather[done]);
+                    done++;
+                }
+                Arrays.fill(gather, 0, count, null);
+                if (written > 0) {
+                    long queued = queuedBytes.addAndGet(-written);
+                    if (queued + written > OUTPUT_RESUME_BYTES && queued <= OUTPUT_RESUME_BYTES) {
+                        // The client caught up: run what drain() held back, and read on
+                        schedule();
+                        resumeReadIfCaughtUp();
+                    }
+                }
+                // The socket is full
+                if (done < count) return;
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            lastActivityAt = System.nanoTime();
+            if (closing) close();
+        }
+
+        // Selector thread: drop a misbehaving client with a reset, discarding whatever
+        // the OS still holds for it instead of trickling that out after the close
+        void abort() {
+            try {
+                channel.setOption(StandardSocketOptions.SO_LINGER, 0);
+            } catch (IOException ignored) {}
+            close();
+        }
+
+        // Selector thread: drop the socket; the session is ended by the next drain
+        void close() {
+            closed = true;
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ignored) {}
+            commands.clear();
+            ByteBuffer buffer;
+            while ((buffer = output.poll()) != null) {
+                releaseBuffer(buffer);
+            }
+            queuedBytes.set(0);
+            inputClosed = true;
+            schedule();
+        }
+    }
+}
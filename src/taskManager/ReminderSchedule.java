@@ -0,0 +1,88 @@
+package taskManager;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Which users have tasks falling due on which day: a delay queue keyed by due date
+ * (an epoch day), for the reminder engine (see Reminders).
+ * An entry is a (user, day) pair rather than a task, since a user's tasks due on one
+ * day fall due together and the user's byDate index already lists them, so scheduling
+ * costs one entry per day with tasks due, however many tasks that day has.
+ * Days are consecutive integers, so the slots are a hash map walked day by day as time
+ * passes: scheduling and cancelling are O(1), and taking a day's slot is O(users in it).
+ */
+public class ReminderSchedule {
+
+    // due day -> users with a task due that day; a set is only touched inside the map's compute
+    private final ConcurrentHashMap<Integer, Set<String>> byDay = new ConcurrentHashMap<>();
+
+    private final AtomicLong entries = new AtomicLong();
+
+    /**
+     * Schedules a user for a day; returns false if they already were
+     */
+    public boolean schedule(String username, int day) {
+        boolean[] added = new boolean[1];
+        byDay.compute(day, (d, users) -> {
+            if (users == null) users = new HashSet<>();
+            added[0] = users.add(username);
+            return users;
+        });
+        if (added[0]) entries.incrementAndGet();
+        return added[0];
+    }
+
+    /**
+     * Takes a user off a day, e.g. when their last task due that day is deleted; returns false if they weren't on it
+     */
+    public boolean cancel(String username, int day) {
+        boolean[] removed = new boolean[1];
+        byDay.computeIfPresent(day, (d, users) -> {
+            removed[0] = users.remove(username);
+            return users.isEmpty() ? null : users;
+        });
+        if (removed[0]) entries.decrementAndGet();
+        return removed[0];
+    }
+
+    /**
+     * The users scheduled for a day, which stay scheduled
+     */
+    public List<String> usersOn(int day) {
+        List<String> result = new ArrayList<>();
+        byDay.computeIfPresent(day, (d, users) -> {
+            result.addAll(users);
+            return users;
+        });
+        return result;
+    }
+
+    /**
+     * Removes a day's slot, returning its users
+     */
+    public Set<String> take(int day) {
+        Set<String> users = byDay.remove(day);
+        if (users == null) return Set.of();
+        entries.addAndGet(-users.size());
+        return users;
+    }
+
+    /**
+     * Number of (user, day) entries scheduled
+     */
+    public long size() {
+        return entries.get();
+    }
+
+    /**
+     * Number of days with at least one user scheduled
+     */
+    public int days() {
+        return byDay.size();
+    }
+}
@@ -0,0 +1,189 @@
+package taskManager;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pushes REMINDER messages to sessions that asked for them (REMINDERS ON) when
+ * their tasks fall due: at local midnight, tasks due that day are DUE TODAY and
+ * those due the day before become OVERDUE.
+ *
+ * Only subscribed users are scheduled, in a ReminderSchedule with one entry per
+ * user and day that has tasks due from today on. TaskDataManager keeps it in step
+ * as tasks are added and deleted, under the user's write lock, and the midnight
+ * tick reads the tasks themselves from the user's byDate index.
+ *
+ * A push is framed like a response, every line starting with "REMINDER ", and
+ * each server writes it between two responses of the session.
+ */
+class Reminders {
+
+    // Lines per push; the rest are summed up in one more line
+    private static final int MAX_PUSH_LINES = 20;
+
+    private static final Logger logger = Logger.getLogger("practical");
+
+    private static final ReminderSchedule SCHEDULE = new ReminderSchedule();
+
+    // username -> push callbacks of the sessions with REMINDERS ON
+    private static final Map<String, Set<Consumer<String>>> SUBSCRIBERS = new ConcurrentHashMap<>();
+
+    private static final AtomicLong PUSHED = new AtomicLong();
+
+    // The day the last tick was for; guarded by Reminders.class
+    private static int lastTick = today();
+
+    // Runs the midnight ticks. Pushes to thread-per-connection sessions are written on it, so a
+    // client that stopped reading holds it up until the write timeout (see BlockingConnection).
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "task-reminders");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        scheduleNextTick();
+    }
+
+    static int today() {
+        return (int) LocalDate.now().toEpochDay();
+    }
+
+    /**
+     * Adds a session's push callback for a user whose tasks are resident in data.
+     * The first subscriber schedules every day the user has tasks due from today on.
+     * Caller holds the user's write lock.
+     */
+    static void subscribe(String username, Consumer<String> pusher, UserTasks data) {
+        Set<Consumer<String>> pushers = SUBSCRIBERS.computeIfAbsent(username, u -> new CopyOnWriteArraySet<>());
+        boolean first = pushers.isEmpty();
+        pushers.add(pusher);
+        if (!first || data == null) return;
+        for (Integer day : data.byDate.tailMap(today(), true).keySet()) {
+            SCHEDULE.schedule(username, day);
+        }
+    }
+
+    /**
+     * Removes a session's push callback; the last one takes the user's days off the schedule.
+     * Caller holds the user's write lock.
+     */
+    static void unsubscribe(String username, Consumer<String> pusher, UserTasks data) {
+        Set<Consumer<String>> pushers = SUBSCRIBERS.get(username);
+        if (pushers == null || !pushers.remove(pusher) || !pushers.isEmpty()) return;
+        SUBSCRIBERS.remove(username);
+        if (data == null) return;
+        for (Integer day : data.byDate.tailMap(today() - 1, true).keySet()) {
+            SCHEDULE.cancel(username, day);
+        }
+    }
+
+    /**
+     * Called after a task was added; caller holds the user's write lock
+     */
+    static void taskAdded(String username, Task task) {
+        if (task.epochDay >= today() && SUBSCRIBERS.containsKey(username)) SCHEDULE.schedule(username, task.epochDay);
+    }
+
+    /**
+     * Called after a task was removed from data; caller holds the user's write lock
+     */
+    static void taskRemoved(String username, Task task, UserTasks data) {
+        if (!data.byDate.containsKey(task.epochDay) && SUBSCRIBERS.containsKey(username)) {
+            SCHEDULE.cancel(username, task.epochDay);
+        }
+    }
+
+    private static void scheduleNextTick() {
+        ZonedDateTime now = ZonedDateTime.now();
+        ZonedDateTime midnight = now.toLocalDate().plusDays(1).atStartOfDay(now.getZone());
+        // A little past midnight, so the clock surely reads the new day
+        long delay = Duration.between(now, midnight).toMillis() + 100;
+        TIMER.schedule(() -> {
+            try {
+                tick(today());
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Reminder tick failed", e);
+            }
+            scheduleNextTick();
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Pushes what fell due since the last tick, which was for an earlier day:
+     * tasks due on the days before today are now overdue, tasks due today are due.
+     */
+    static synchronized void tick(int today) {
+        if (today <= lastTick) return;
+
+        // username -> days whose tasks are now overdue; the entries end here
+        Map<String, List<Integer>> overdue = new LinkedHashMap<>();
+        for (int day = lastTick; day < today; day++) {
+            for (String username : SCHEDULE.take(day)) {
+                overdue.computeIfAbsent(username, u -> new ArrayList<>()).add(day);
+            }
+        }
+        List<String> dueToday = SCHEDULE.usersOn(today);
+        lastTick = today;
+
+        for (String username : dueToday) {
+            overdue.putIfAbsent(username, List.of());
+        }
+        for (Map.Entry<String, List<Integer>> user : overdue.entrySet()) {
+            Set<Consumer<String>> pushers = SUBSCRIBERS.get(user.getKey());
+            if (pushers == null) continue;
+            String frame = TaskDataManager.reminderPush(user.getKey(), user.getValue(), today);
+            if (frame == null) continue;
+            for (Consumer<String> pusher : pushers) {
+                pusher.accept(frame);
+                PUSHED.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Formats a push from reminder lines ("DUE TODAY: ..." / "OVERDUE: ..."), or null if there are none
+     */
+    static String frame(List<String> lines) {
+        if (lines.isEmpty()) return null;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines.size() && i < MAX_PUSH_LINES; i++) {
+            if (i > 0) sb.append('\n');
+            sb.append("REMINDER ").append(lines.get(i));
+        }
+        if (lines.size() > MAX_PUSH_LINES) {
+            sb.append("\nREMINDER ... and ").append(lines.size() - MAX_PUSH_LINES).append(" more, see VIEW");
+        }
+        return sb.toString();
+    }
+
+    // (user, day) entries scheduled
+    static long scheduled() {
+        return SCHEDULE.size();
+    }
+
+    // Users with at least one session subscribed
+    static int subscribedUsers() {
+        return SUBSCRIBERS.size();
+    }
+
+    // Pushes handed to sessions
+    static long pushed() {
+        return PUSHED.get();
+    }
+}
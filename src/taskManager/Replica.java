@@ -0,0 +1,241 @@
+package taskManager;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Replica side of primary/replica replication (see ReplicationLog for the stream).
+ * With -DtaskManager.replicaOf=host:port, the primary's replication port, and the primary's
+ * taskManager.replicationSecret, the server keeps its data directory a copy of the primary's, applying the stream as it comes in
+ * on a thread of its own. It is read-only: REGISTER, ADD, DELETE and BATCH are refused,
+ * while LOGIN, VIEW and SEARCH are served from the copy, a little behind the primary.
+ *
+ * Records are appended to the users' files and fsynced as they come; those of resident
+ * users are applied in memory too. After losing the primary the replica
+ * reconnects every few seconds and picks up where it was if the primary's backlog still
+ * reaches back that far; otherwise, and after the replica itself restarts, it is sent a
+ * full copy. To promote it, restart it without taskManager.replicaOf.
+ */
+class Replica {
+
+    // host:port of the primary's replication port, empty if this server isn't a replica
+    static final String PRIMARY = System.getProperty("taskManager.replicaOf", "").trim();
+
+    static final String READ_ONLY = "Error: This server is a read-only replica. Send changes to the primary server.";
+
+    private static final long RETRY_MS = 3000;
+
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+
+    // Silence from the primary for this long means the connection is gone; it sends a heartbeat every second
+    private static final int READ_TIMEOUT_MS = (int) (5 * ReplicationLog.HEARTBEAT_MS);
+
+    // Most stream lines applied together
+    private static final int APPLY_BATCH = 1000;
+
+    private static final Logger logger = Logger.getLogger("practical");
+
+    // Replica thread only: the primary run our position belongs to
+    private static String run = "-";
+
+    // Seq of the last record applied, and of the last one the primary is known to have
+    private static volatile long applied = 0;
+    private static volatile long primarySeq = 0;
+    // How far behind the primary's clock the last record or heartbeat was applied
+    private static volatile long lagMillis = 0;
+    private static volatile long lastHeardAt = 0;
+    private static volatile boolean connected = false;
+
+    static boolean isReplica() {
+        return !PRIMARY.isEmpty();
+    }
+
+    /**
+     * Starts following the primary if this server is a replica
+     */
+    static void start() {
+        if (!isReplica()) return;
+        if (ReplicationLog.enabled()) {
+            throw new IllegalArgumentException("A replica can't have replicas itself: drop taskManager.replicationPort");
+        }
+        ReplicationLog.requireSecret();
+        int colon = PRIMARY.lastIndexOf(':');
+        if (colon <= 0) throw new IllegalArgumentException("taskManager.replicaOf must be host:port, not " + PRIMARY);
+        InetSocketAddress primary = new InetSocketAddress(PRIMARY.substring(0, colon),
+                Integer.parseInt(PRIMARY.substring(colon + 1)));
+
+        Thread thread = new Thread(() -> {
+            while (true) {
+                try {
+                    follow(primary);
+                } catch (IOException | RuntimeException e) {
+                    logger.log(Level.WARNING, "Lost the primary " + PRIMARY + ", retrying in " + RETRY_MS + " ms", e);
+                } finally {
+                    connected = false;
+                }
+                try {
+                    Thread.sleep(RETRY_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "replica");
+        thread.setDaemon(true);
+        thread.start();
+        logger.info("Read-only replica of " + PRIMARY);
+    }
+
+    private static void follow(InetSocketAddress primary) throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.connect(primary, CONNECT_TIMEOUT_MS);
+            socket.setSoTimeout(READ_TIMEOUT_MS);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            PrintWriter writer = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+
+            String[] challenge = readLine(reader).split(" ");
+            if (challenge.length != 2 || !challenge[0].equals("CHALLENGE")) throw new IOException("Not a replication port");
+            writer.println("REPLICATE " + run + " " + applied + " " + ReplicationLog.proof(challenge[1]));
+            String[] answer = readLine(reader).split(" ");
+            if (answer.length != 2) throw new IOException("Not a replication port: " + String.join(" ", answer));
+            connected = true;
+            lastHeardAt = System.currentTimeMillis();
+            if (answer[0].equals("FULL")) {
+                // Until the copy is complete there is no position to continue from
+                run = "-";
+                long start = System.nanoTime();
+                int users = readCopy(reader);
+                run = answer[1];
+                logger.info("Copied " + users + " users from the primary in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+            } else if (!answer[0].equals("CONTINUE") || !answer[1].equals(run)) {
+                throw new IOException("Unexpected answer from the primary: " + String.join(" ", answer));
+            }
+
+            List<String> batch = new ArrayList<>();
+            while (true) {
+                batch.clear();
+                batch.add(readLine(reader));
+                while (batch.size() < APPLY_BATCH && reader.ready()) {
+                    batch.add(readLine(reader));
+                }
+                apply(batch);
+            }
+        }
+    }
+
+    private static String readLine(BufferedReader reader) throws IOException {
+        String line = reader.readLine();
+        if (line == null) throw new IOException("The primary closed the connection");
+        return line;
+    }
+
+    // Takes a full copy: every user's credentials and tasks replace what is here. Returns the number of users.
+    private static int readCopy(BufferedReader reader) throws IOException {
+        int users = 0;
+        while (true) {
+            String[] fields = readLine(reader).split("\t", 4);
+            switch (fields[0]) {
+                case "U":
+                    CredentialStore.registerReplicated(fields[1], fields[2], false);
+                    break;
+                case "S":
+                    UserTasks copy = new UserTasks(false);
+                    copy.nextId = Integer.parseInt(fields[2]);
+                    int count = Integer.parseInt(fields[3]);
+                    for (int i = 0; i < count; i++) {
+                        Task task = Task.parse(readLine(reader));
+                        if (task != null) copy.put(task);
+                    }
+                    TaskDataManager.replaceReplicated(fields[1], copy);
+                    users++;
+                    break;
+                case "F":
+                    // Positions of the primary's earlier runs no longer count
+                    applied = Long.parseLong(fields[1]);
+                    primarySeq = applied;
+                    return users;
+                default:
+                    throw new IOException("Unexpected line in the full copy: " + fields[0]);
+            }
+        }
+    }
+
+    // Applies stream lines in order: journal records grouped by user, registrations as they come
+    private static void apply(List<String> lines) throws IOException {
+        Map<String, List<String>> records = new LinkedHashMap<>();
+        long last = applied;
+        long lastMillis = -1;
+        for (String line : lines) {
+            String[] fields = line.split("\t", 5);
+            long seq = Long.parseLong(fields[1]);
+            long millis = Long.parseLong(fields[2]);
+            if (fields[0].equals("H")) {
+                primarySeq = Math.max(primarySeq, seq);
+                lastMillis = millis;
+                continue;
+            }
+            if (seq <= last) continue;
+            if (seq != last + 1) throw new IOException("Replication stream skipped from " + last + " to " + seq);
+
+            if (fields[0].equals("R")) {
+                records.computeIfAbsent(fields[3], u -> new ArrayList<>()).add(fields[4]);
+            } else if (fields[0].equals("N")) {
+                // A user's records only follow their registration
+                applyRecords(records);
+                // Index entry before the task file, as on the primary
+                CredentialStore.registerReplicated(fields[3], fields[4], true);
+                TaskDataManager.createUser(fields[3]);
+            } else {
+                throw new IOException("Unexpected line in the replication stream: " + fields[0]);
+            }
+            last = seq;
+            lastMillis = millis;
+        }
+        applyRecords(records);
+
+        applied = last;
+        primarySeq = Math.max(primarySeq, last);
+        long now = System.currentTimeMillis();
+        lastHeardAt = now;
+        if (lastMillis >= 0) lagMillis = Math.max(0, now - lastMillis);
+    }
+
+    private static void applyRecords(Map<String, List<String>> records) throws IOException {
+        for (Map.Entry<String, List<String>> user : records.entrySet()) {
+            TaskDataManager.applyReplicated(user.getKey(), user.getValue());
+        }
+        records.clear();
+    }
+
+    // Seq of the last record applied
+    static long applied() {
+        return applied;
+    }
+
+    // Records the primary is known to have that aren't applied yet
+    static long lagRecords() {
+        return primarySeq - applied;
+    }
+
+    // While connected, how long after the primary published it the last record (or heartbeat) was
+    // applied; otherwise how long ago the primary was last heard from. Assumes both clocks agree.
+    static long lagMillis() {
+        if (connected) return lagMillis;
+        return lastHeardAt == 0 ? -1 : System.currentTimeMillis() - lastHeardAt;
+    }
+
+    static boolean isConnected() {
+        return connected;
+    }
+}
@@ -0,0 +1,302 @@
+package taskManager;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Primary side of primary/replica replication (the replica side is Replica).
+ * With -DtaskManager.replicationPort=<port> every change is numbered and kept in a
+ * backlog of the last taskManager.replicationBacklog records (default 100000), and
+ * replicas connected to that port get them streamed as they happen. Replication is
+ * asynchronous: a command never waits for a replica.
+ *
+ * The changes are the journal records of ADD and DELETE (TaskJournal format), published
+ * by TaskDataManager under the user's write lock so each user's records stay in order,
+ * and REGISTER with the user's salted password hash.
+ *
+ * A replica that connects fresh, or whose position is no longer in the backlog, first
+ * gets a full copy: every user and their tasks, each read under the user's lock while
+ * numbering goes on. The stream then resumes from where the copy started, so some
+ * records reach the replica twice; replaying a journal record twice is harmless.
+ *
+ * The port listens on taskManager.replicationBind (default loopback only), and replicas
+ * must prove they know taskManager.replicationSecret, which both sides need: the full copy
+ * holds every user's password hash. The stream itself is not encrypted, so across machines
+ * it belongs on a private network or a tunnel.
+ *
+ * The connection starts with "CHALLENGE <nonce>" from the primary, then "REPLICATE <run> <seq>
+ * <proof>" from the replica, the proof being an HMAC of the nonce keyed with the secret, and
+ * "CONTINUE <run>" or "FULL <run>" back. Then text lines with tab-separated fields:
+ *   U user salt:hash            a registered user (full copy)
+ *   S user nextId count         a user's tasks: count task lines follow (full copy)
+ *   F seq                       end of the full copy, which holds everything up to seq
+ *   R seq millis user record    a journal record
+ *   N seq millis user salt:hash a user registered
+ *   H seq millis                nothing new after seq (sent when idle, once a second)
+ * millis is the primary's clock when the record was published, for the replica's lag.
+ */
+class ReplicationLog {
+
+    static final int PORT = Integer.getInteger("taskManager.replicationPort", 0);
+
+    private static final String BIND = System.getProperty("taskManager.replicationBind", "127.0.0.1");
+
+    // Shared by the primary and its replicas
+    private static final String SECRET = System.getProperty("taskManager.replicationSecret", "");
+
+    private static final int BACKLOG = Math.max(1, Integer.getInteger("taskManager.replicationBacklog", 100_000));
+
+    // How often an idle stream tells the replica it's up to date
+    static final long HEARTBEAT_MS = 1000;
+
+    // Most records sent per write
+    private static final int SEND_BATCH = 1000;
+
+    // Time allowed for a replica's first line
+    private static final int HANDSHAKE_TIMEOUT_MS = 10_000;
+
+    private static final Logger logger = Logger.getLogger("practical");
+
+    // New for every start, so a replica can tell whether its position belongs to this numbering
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final String RUN = Long.toHexString(RANDOM.nextLong());
+
+    private static final Object LOCK = new Object();
+
+    // Guarded by LOCK: the last seq published, and lines by seq % BACKLOG
+    private static long seq = 0;
+    private static final String[] RING = PORT > 0 ? new String[BACKLOG] : null;
+
+    private static final Set<Sender> SENDERS = ConcurrentHashMap.newKeySet();
+
+    static boolean enabled() {
+        return PORT > 0;
+    }
+
+    /**
+     * Starts taking replica connections if a replication port is configured
+     */
+    static void start() throws IOException {
+        if (!enabled()) return;
+        requireSecret();
+        ServerSocket server = new ServerSocket(PORT, 50, InetAddress.getByName(BIND));
+        Thread listener = new Thread(() -> {
+            while (true) {
+                try {
+                    Socket socket = server.accept();
+                    Thread sender = new Thread(new Sender(socket), "replication-" + socket.getRemoteSocketAddress());
+                    sender.setDaemon(true);
+                    sender.start();
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Replica accept failed", e);
+                }
+            }
+        }, "replication-listener");
+        listener.setDaemon(true);
+        listener.start();
+        logger.info("Replicating to replicas connecting on " + BIND + ":" + PORT);
+    }
+
+    static void requireSecret() {
+        if (SECRET.isEmpty()) {
+            throw new IllegalArgumentException("Replication needs -DtaskManager.replicationSecret, the same on the primary and its replicas");
+        }
+    }
+
+    /**
+     * The replica's answer to a challenge: HMAC-SHA256 of the nonce keyed with the shared secret, in hex
+     */
+    static String proof(String nonce) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            return HexFormat.of().formatHex(mac.doFinal(nonce.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    }
+
+    /**
+     * A journal record for the user's file; caller holds the user's write lock
+     */
+    static void taskRecord(String username, String record) {
+        if (enabled()) publish("R", username, record);
+    }
+
+    /**
+     * A user was registered, with credentials now in the CredentialStore
+     */
+    static void userRegistered(String username) {
+        if (!enabled()) return;
+        String credentials = CredentialStore.credentials(username);
+        if (credentials != null) publish("N", username, credentials);
+    }
+
+    private static void publish(String type, String username, String payload) {
+        String fields = System.currentTimeMillis() + "\t" + username + "\t" + payload;
+        synchronized (LOCK) {
+            seq++;
+            RING[(int) (seq % BACKLOG)] = type + "\t" + seq + "\t" + fields;
+            LOCK.notifyAll();
+        }
+    }
+
+    static long lastSeq() {
+        synchronized (LOCK) {
+            return seq;
+        }
+    }
+
+    // Adds the lines after position (at most SEND_BATCH), returning the seq of the last one added,
+    // or -1 if the backlog no longer reaches back to position. Waits up to timeoutMs for one.
+    private static long linesAfter(long position, List<String> lines, long timeoutMs) throws InterruptedException {
+        synchronized (LOCK) {
+            if (seq == position) LOCK.wait(timeoutMs);
+            if (position < seq - BACKLOG) return -1;
+            long end = Math.min(seq, position + SEND_BATCH);
+            for (long next = position + 1; next <= end; next++) {
+                lines.add(RING[(int) (next % BACKLOG)]);
+            }
+            return end;
+        }
+    }
+
+    // Whether a replica of this run at position can pick up from the backlog
+    private static boolean canContinue(String run, long position) {
+        synchronized (LOCK) {
+            return run.equals(RUN) && position <= seq && position >= seq - BACKLOG;
+        }
+    }
+
+    // Connected replicas
+    static int replicas() {
+        return SENDERS.size();
+    }
+
+    // Records not yet sent to the replica furthest behind
+    static long furthestBehind() {
+        long last = lastSeq();
+        long behind = 0;
+        for (Sender sender : SENDERS) {
+            behind = Math.max(behind, last - sender.sent);
+        }
+        return behind;
+    }
+
+    // Streams the log to one replica, on its own thread
+    private static final class Sender implements Runnable {
+        private final Socket socket;
+        // Seq of the last line written to the replica
+        volatile long sent;
+
+        Sender(Socket socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public void run() {
+            String replica = String.valueOf(socket.getRemoteSocketAddress());
+            try (Socket s = socket;
+                 BufferedReader reader = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+                 PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8)))) {
+                s.setSoTimeout(HANDSHAKE_TIMEOUT_MS);
+                byte[] nonce = new byte[16];
+                RANDOM.nextBytes(nonce);
+                String challenge = HexFormat.of().formatHex(nonce);
+                writer.println("CHALLENGE " + challenge);
+                writer.flush();
+                String[] hello = String.valueOf(reader.readLine()).split(" ");
+                if (hello.length != 4 || !hello[0].equals("REPLICATE")) throw new IOException("Not a replica");
+                if (!MessageDigest.isEqual(proof(challenge).getBytes(StandardCharsets.US_ASCII),
+                        hello[3].getBytes(StandardCharsets.US_ASCII))) {
+                    throw new IOException("Wrong replication secret");
+                }
+                long position = Long.parseLong(hello[2]);
+
+                if (canContinue(hello[1], position)) {
+                    writer.println("CONTINUE " + RUN);
+                    logger.info("Replica " + replica + " continues after record " + position);
+                } else {
+                    writer.println("FULL " + RUN);
+                    long start = System.nanoTime();
+                    position = writeCopy(writer);
+                    logger.info("Sent a full copy to replica " + replica + " in "
+                            + (System.nanoTime() - start) / 1_000_000 + " ms");
+                }
+                sent = position;
+                SENDERS.add(this);
+                stream(writer, position);
+            } catch (IOException | NumberFormatException e) {
+                logger.log(Level.WARNING, "Replication to " + replica + " stopped", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                SENDERS.remove(this);
+            }
+        }
+
+        // Every registered user and their tasks, then F with the seq the copy started at
+        private long writeCopy(PrintWriter writer) throws IOException {
+            long position = lastSeq();
+            for (String username : TaskDataManager.storedUsers()) {
+                String credentials = CredentialStore.credentials(username);
+                if (credentials == null) continue;
+                UserTasks copy = TaskDataManager.replicaCopy(username);
+                if (copy == null) continue;
+                writer.println("U\t" + username + "\t" + credentials);
+                writer.println("S\t" + username + "\t" + copy.nextId + "\t" + copy.tasks.size());
+                for (Task task : copy.tasks.values()) {
+                    writer.println(task.toLine());
+                }
+                if (writer.checkError()) throw new IOException("Replica connection lost");
+            }
+            writer.println("F\t" + position);
+            writer.flush();
+            return position;
+        }
+
+        private void stream(PrintWriter writer, long position) throws IOException, InterruptedException {
+            List<String> lines = new ArrayList<>();
+            while (true) {
+                lines.clear();
+                long last = linesAfter(position, lines, HEARTBEAT_MS);
+                if (last < 0) {
+                    // It reconnects with a position we no longer have, and gets a full copy
+                    throw new IOException("Replica fell behind the last " + BACKLOG + " records");
+                }
+                if (lines.isEmpty()) {
+                    writer.println("H\t" + position + "\t" + System.currentTimeMillis());
+                } else {
+                    for (String line : lines) {
+                        writer.println(line);
+                    }
+                }
+                writer.flush();
+                if (writer.checkError()) throw new IOException("Replica connection lost");
+                position = last;
+                sent = last;
+            }
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package taskManager;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.function.IntSupplier;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Runtime counters for the server: per-command counts and latency histograms,
+ * storage bytes and fsyncs, lock wait time, view cache hits, active sessions,
+ * accept-queue depth and clients refused or dropped by ConnectionLimits.
+ * Readable through JMX (ServerMetricsMXBean) and the STATS command.
+ * All recording methods are lock-free and cheap enough for every request.
+ */
+public class ServerMetrics implements ServerMetricsMXBean {
+
+    // Commands tracked individually; anything else is counted as OTHER
+    private static final String[] COMMANDS = { "ADD", "VIEW", "SEARCH", "DELETE", "LOGIN", "REGISTER", "BATCH", "OTHER" };
+
+    // Latency histogram buckets: bucket i counts latencies below 2^i microseconds
+    private static final int BUCKETS = 32;
+
+    private static final Map<String, CommandStats> STATS = new LinkedHashMap<>();
+
+    static {
+        for (String command : COMMANDS) {
+            STATS.put(command, new CommandStats());
+        }
+    }
+
+    private static final LongAdder BYTES_READ = new LongAdder();
+    private static final LongAdder BYTES_WRITTEN = new LongAdder();
+    private static final LongAdder SYNCS = new LongAdder();
+    private static final LongAdder LOCK_WAIT_NANOS = new LongAdder();
+    private static final LongAdder VIEW_HITS = new LongAdder();
+    private static final LongAdder VIEW_MISSES = new LongAdder();
+    private static final LongAdder VIEW_EVICTIONS = new LongAdder();
+    private static final LongAdder VIEW_INVALIDATIONS = new LongAdder();
+    private static final AtomicInteger ACTIVE_SESSIONS = new AtomicInteger();
+    private static final LongAdder CONNECTIONS_REJECTED = new LongAdder();
+    private static final LongAdder CLIENTS_TIMED_OUT = new LongAdder();
+    private static final LongAdder OUTPUT_OVERFLOWS = new LongAdder();
+    private static final LongAdder COMMANDS_RATE_LIMITED = new LongAdder();
+
+    // Set by the running server mode
+    private static volatile IntSupplier acceptQueue = () -> 0;
+
+    private static class CommandStats {
+        final LongAdder count = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server
+     */
+    public static void registerMBean() throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(
+                new ServerMetrics(), new ObjectName("taskManager:type=ServerMetrics"));
+    }
+
+    /**
+     * Records one handled command; command is the first word of the line
+     */
+    public static void recordCommand(String command, long nanos) {
+        CommandStats stats = STATS.get(command.toUpperCase());
+        if (stats == null) stats = STATS.get("OTHER");
+        stats.count.increment();
+        stats.totalNanos.add(nanos);
+        long micros = nanos / 1000;
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        stats.buckets.incrementAndGet(bucket);
+    }
+
+    public static void recordBytesRead(long bytes) {
+        BYTES_READ.add(bytes);
+    }
+
+    public static void recordBytesWritten(long bytes) {
+        BYTES_WRITTEN.add(bytes);
+    }
+
+    // One fsync of a user's task file
+    public static void recordSync() {
+        SYNCS.increment();
+    }
+
+    // One ViewCache lookup
+    public static void recordViewCache(boolean hit) {
+        (hit ? VIEW_HITS : VIEW_MISSES).increment();
+    }
+
+    // Views evicted from the ViewCache to stay within its bounds
+    public static void recordViewEviction(int views) {
+        VIEW_EVICTIONS.add(views);
+    }
+
+    // A user's cached views dropped because their tasks changed
+    public static void recordViewInvalidation() {
+        VIEW_INVALIDATIONS.increment();
+    }
+
+    /**
+     * Acquires the lock, adding any time spent waiting to the lock-wait total
+     */
+    public static void lock(Lock lock) {
+        if (lock.tryLock()) return;
+        long start = System.nanoTime();
+        lock.lock();
+        LOCK_WAIT_NANOS.add(System.nanoTime() - start);
+    }
+
+    public static void sessionOpened() {
+        ACTIVE_SESSIONS.incrementAndGet();
+    }
+
+    public static void sessionClosed() {
+        ACTIVE_SESSIONS.decrementAndGet();
+    }
+
+    // A connection refused at the connection limit
+    public static void recordConnectionRejected() {
+        CONNECTIONS_REJECTED.increment();
+    }
+
+    // A client dropped for being idle, too slow sending a command or not reading its response
+    public static void recordClientTimedOut() {
+        CLIENTS_TIMED_OUT.increment();
+    }
+
+    // A client dropped because its unread output passed the buffer limit
+    public static void recordOutputOverflow() {
+        OUTPUT_OVERFLOWS.increment();
+    }
+
+    // A command refused by the per-user rate limit
+    public static void recordRateLimited() {
+        COMMANDS_RATE_LIMITED.increment();
+    }
+
+    /**
+     * Sets where the accept-queue depth gauge reads from
+     */
+    public static void setAcceptQueue(IntSupplier depth) {
+        acceptQueue = depth;
+    }
+
+    /**
+     * Formats every metric as a text table (the STATS response)
+     */
+    public static String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("\n--- SERVER STATS ---\n");
+        sb.append(String.format("%-10s | %-10s | %-10s | %-10s | %s\n", "COMMAND", "COUNT", "MEAN ms", "P50 ms", "P99 ms"));
+        sb.append("----------------------------------------------------------------------------------\n");
+        for (Map.Entry<String, CommandStats> entry : STATS.entrySet()) {
+            CommandStats stats = entry.getValue();
+            long count = stats.count.sum();
+            sb.append(String.format("%-10s | %-10d | %-10.3f | %-10.3f | %.3f\n", entry.getKey(), count,
+                    meanMillis(stats), percentileMillis(stats, 0.50), percentileMillis(stats, 0.99)));
+        }
+        sb.append("----------------------------------------------------------------------------------\n");
+        sb.append("Active sessions:       ").append(ACTIVE_SESSIONS.get()).append("\n");
+        sb.append("Accept queue depth:    ").append(acceptQueue.getAsInt()).append("\n");
+        sb.append("Clients refused:       ").append(CONNECTIONS_REJECTED.sum()).append(" at the connection limit, ")
+                .append(COMMANDS_RATE_LIMITED.sum()).append(" commands rate limited\n");
+        sb.append("Clients dropped:       ").append(CLIENTS_TIMED_OUT.sum()).append(" timed out, ")
+                .append(OUTPUT_OVERFLOWS.sum()).append(" output overflows\n");
+        sb.append("Registered users:      ").append(UserManifest.size()).append(", ")
+                .append(UserManifest.storedTasks()).append(" tasks in ")
+                .append(UserManifest.storedBytes() / 1024).append(" KB of task files (")
+                .append(UserManifest.uncountedUsers()).append(" users not counted yet)\n");
+        sb.append("Storage bytes read:    ").append(BYTES_READ.sum()).append("\n");
+        sb.append("Storage bytes written: ").append(BYTES_WRITTEN.sum()).append("\n");
+        sb.append("Storage fsyncs:        ").append(SYNCS.sum()).append("\n");
+        sb.append("Lock wait total ms:    ").append(LOCK_WAIT_NANOS.sum() / 1_000_000).append("\n");
+        sb.append("User locks:            ").append(UserLockRegistry.size()).append("\n");
+        sb.append("View cache:            ").append(VIEW_HITS.sum()).append(" hits, ")
+                .append(VIEW_MISSES.sum()).append(" misses, ")
+                .append(VIEW_EVICTIONS.sum()).append(" evicted, ")
+                .append(VIEW_INVALIDATIONS.sum()).append(" invalidations; ")
+                .append(ViewCache.size()).append(" views, ")
+                .append(ViewCache.bytes() / 1024).append(" KB\n");
+        sb.append("Reminders:             ").append(Reminders.subscribedUsers()).append(" users subscribed, ")
+                .append(Reminders.scheduled()).append(" user-days scheduled, ")
+                .append(Reminders.pushed()).append(" pushed\n");
+        if (ReplicationLog.enabled()) {
+            sb.append("Replication:           primary, record ").append(ReplicationLog.lastSeq()).append(", ")
+                    .append(ReplicationLog.replicas()).append(" replicas, furthest ")
+                    .append(ReplicationLog.furthestBehind()).append(" records behind\n");
+        }
+        if (Replica.isReplica()) {
+            sb.append("Replication:           replica of ").append(Replica.PRIMARY)
+                    .append(Replica.isConnected() ? ", connected" : ", disconnected")
+                    .append(", record ").append(Replica.applied()).append(" applied, lag ")
+                    .append(Replica.lagMillis()).append(" ms / ").append(Replica.lagRecords()).append(" records\n");
+        }
+        return sb.toString();
+    }
+
+    private static double meanMillis(CommandStats stats) {
+        long count = stats.count.sum();
+        return count == 0 ? 0 : stats.totalNanos.sum() / (double) count / 1e6;
+    }
+
+    // Upper bound of the bucket holding the given percentile
+    private static double percentileMillis(CommandStats stats, double p) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) total += stats.buckets.get(i);
+        if (total == 0) return 0;
+
+        long target = (long) Math.ceil(p * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += stats.buckets.get(i);
+            if (seen >= target) return (1L << i) / 1000.0;
+        }
+        return (1L << (BUCKETS - 1)) / 1000.0;
+    }
+
+    // MXBean view
+
+    @Override
+    public Map<String, Long> getCommandCounts() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        STATS.forEach((command, stats) -> result.put(command, stats.count.sum()));
+        return result;
+    }
+
+    @Override
+    public Map<String, Double> getCommandMeanMillis() {
+        Map<String, Double> result = new LinkedHashMap<>();
+        STATS.forEach((command, stats) -> result.put(command, meanMillis(stats)));
+        return result;
+    }
+
+    @Override
+    public Map<String, Double> getCommandP99Millis() {
+        Map<String, Double> result = new LinkedHashMap<>();
+        STATS.forEach((command, stats) -> result.put(command, percentileMillis(stats, 0.99)));
+        return result;
+    }
+
+    @Override
+    public long getStorageBytesRead() {
+        return BYTES_READ.sum();
+    }
+
+    @Override
+    public long getStorageBytesWritten() {
+        return BYTES_WRITTEN.sum();
+    }
+
+    @Override
+    public long getStorageSyncs() {
+        return SYNCS.sum();
+    }
+
+    @Override
+    public long getLockWaitMillis() {
+        return LOCK_WAIT_NANOS.sum() / 1_000_000;
+    }
+
+    @Override
+    public long getViewCacheHits() {
+        return VIEW_HITS.sum();
+    }
+
+    @Override
+    public long getViewCacheMisses() {
+        return VIEW_MISSES.sum();
+    }
+
+    @Override
+    public long getViewCacheEvictions() {
+        return VIEW_EVICTIONS.sum();
+    }
+
+    @Override
+    public long getViewCacheInvalidations() {
+        return VIEW_INVALIDATIONS.sum();
+    }
+
+    @Override
+    public int getViewCacheEntries() {
+        return ViewCache.size();
+    }
+
+    @Override
+    public long getViewCacheBytes() {
+        return ViewCache.bytes();
+    }
+
+    @Override
+    public int getActiveSessions() {
+        return ACTIVE_SESSIONS.get();
+    }
+
+    @Override
+    public int getAcceptQueueDepth() {
+        return acceptQueue.getAsInt();
+    }
+
+    @Override
+    public long getConnectionsRejected() {
+        return CONNECTIONS_REJECTED.sum();
+    }
+
+    @Override
+    public long getClientsTimedOut() {
+        return CLIENTS_TIMED_OUT.sum();
+    }
+
+    @Override
+    public long getOutputOverflows() {
+        return OUTPUT_OVERFLOWS.sum();
+    }
+
+    @Override
+    public long getCommandsRateLimited() {
+        return COMMANDS_RATE_LIMITED.sum();
+    }
+
+    @Override
+    public int getRegisteredUsers() {
+        return UserManifest.size();
+    }
+
+    @Override
+    public long getStoredTasks() {
+        return UserManifest.storedTasks();
+    }
+
+    @Override
+    public long getReplicationLagMillis() {
+        return Replica.isReplica() ? Replica.lagMillis() : 0;
+    }
+
+    @Override
+    public long getReplicationLagRecords() {
+        if (Replica.isReplica()) return Replica.lagRecords();
+        return ReplicationLog.enabled() ? ReplicationLog.furthestBehind() : 0;
+    }
+
+    @Override
+    public String getReport() {
+        return report();
+    }
+}
@@ -0,0 +1,71 @@
+package taskManager;
+
+import java.util.Map;
+
+/**
+ * JMX view of ServerMetrics, registered as taskManager:type=ServerMetrics.
+ */
+public interface ServerMetricsMXBean {
+
+    // Command name -> number of commands handled
+    Map<String, Long> getCommandCounts();
+
+    // Command name -> mean latency in milliseconds
+    Map<String, Double> getCommandMeanMillis();
+
+    // Command name -> 99th percentile latency in milliseconds (histogram bucket upper bound)
+    Map<String, Double> getCommandP99Millis();
+
+    long getStorageBytesRead();
+
+    long getStorageBytesWritten();
+
+    // fsyncs of task files, see DurabilityPolicy
+    long getStorageSyncs();
+
+    // Total time threads spent waiting for per-user locks in TaskDataManager
+    long getLockWaitMillis();
+
+    // ViewCache lookups that found / didn't find a rendered view
+    long getViewCacheHits();
+
+    long getViewCacheMisses();
+
+    // Views evicted to stay within the cache bounds
+    long getViewCacheEvictions();
+
+    // Times a user's cached views were dropped because their tasks changed
+    long getViewCacheInvalidations();
+
+    int getViewCacheEntries();
+
+    long getViewCacheBytes();
+
+    int getActiveSessions();
+
+    int getAcceptQueueDepth();
+
+    // Clients refused or dropped by ConnectionLimits
+    long getConnectionsRejected();
+
+    long getClientsTimedOut();
+
+    long getOutputOverflows();
+
+    long getCommandsRateLimited();
+
+    // From the UserManifest: tasks of the users whose files have been counted
+    int getRegisteredUsers();
+
+    long getStoredTasks();
+
+    // Replication (see ReplicationLog and Replica): on a replica, how far behind the primary it is
+    // in milliseconds (-1 before it first reached the primary); 0 elsewhere
+    long getReplicationLagMillis();
+
+    // Records a replica hasn't applied yet, or on the primary that its furthest replica hasn't been sent
+    long getReplicationLagRecords();
+
+    // The same text the STATS command returns
+    String getReport();
+}
@@ -0,0 +1,89 @@
+package taskManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Spreads users across several stores (typically FileTaskStores on different
+ * directories or disks) with a consistent-hash ring on the username.
+ * Every call for a user goes to the one shard that owns them, so shards can be
+ * added with only a share of the users moving; files of moved users must be
+ * carried over to their new shard by hand while the server is stopped.
+ */
+class ShardedTaskStore implements TaskStore {
+
+    private final List<TaskStore> shards;
+    private final ConsistentHashRing ring;
+
+    // names identify the shards on the ring and must stay the same across restarts
+    ShardedTaskStore(List<String> names, List<TaskStore> shards) {
+        if (names.size() != shards.size()) throw new IllegalArgumentException("One name per shard expected");
+        this.shards = new ArrayList<>(shards);
+        this.ring = new ConsistentHashRing(names);
+    }
+
+    TaskStore shardFor(String username) {
+        return shards.get(ring.nodeFor(username));
+    }
+
+    @Override
+    public boolean create(String username) throws IOException {
+        return shardFor(username).create(username);
+    }
+
+    @Override
+    public void delete(String username) {
+        shardFor(username).delete(username);
+    }
+
+    @Override
+    public UserTasks load(String username) throws IOException {
+        return shardFor(username).load(username);
+    }
+
+    @Override
+    public UserTasks loadUnindexed(String username) throws IOException {
+        return shardFor(username).loadUnindexed(username);
+    }
+
+    @Override
+    public long append(String username, List<String> records, boolean sync) throws IOException {
+        return shardFor(username).append(username, records, sync);
+    }
+
+    @Override
+    public void sync(String username) throws IOException {
+        shardFor(username).sync(username);
+    }
+
+    @Override
+    public long compact(String username, UserTasks data, boolean binary) throws IOException {
+        return shardFor(username).compact(username, data, binary);
+    }
+
+    @Override
+    public long size(String username) {
+        return shardFor(username).size(username);
+    }
+
+    @Override
+    public File textFile(String username) {
+        return shardFor(username).textFile(username);
+    }
+
+    @Override
+    public List<String> usernames() {
+        List<String> usernames = new ArrayList<>();
+        for (TaskStore shard : shards) {
+            usernames.addAll(shard.usernames());
+        }
+        return usernames;
+    }
+
+    @Override
+    public String toString() {
+        return shards.size() + " shards " + shards;
+    }
+}
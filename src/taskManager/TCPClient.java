@@ -1,88 +1,116 @@
 package taskManager;
 
-import java.net.*;
-import java.io.*;
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.net.UnknownHostException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class TCPClient {
+
+    // "PAGE n SIZE m" inside a VIEW command, and the server's "(Page n of m, k tasks)" footer
+    private static final Pattern PAGE_OPTION = Pattern.compile("(?i)\\s+PAGE\\s+(\\d+)(\\s+SIZE\\s+(\\d+))?");
+    private static final Pattern PAGE_FOOTER = Pattern.compile("(?m)^\\(Page (\\d+) of (\\d+),");
+    private static final Pattern TEXT_OPTION = Pattern.compile("(?i)\\s+TEXT\\s");
+
+    // Commands sent per BATCH block in import mode
+    private static final int IMPORT_BATCH_SIZE = 1000;
+
+    // BATCH blocks sent ahead of their answers in import mode
+    private static final int IMPORT_BATCHES_IN_FLIGHT = 8;
+
     public static void main(String[] args) {
-        if (args.length < 2) {
-            throw new IllegalArgumentException("Parameters: <Server> <Port>");
+        if (args.length != 2 && !(args.length == 6 && args[2].equalsIgnoreCase("--import"))) {
+            throw new IllegalArgumentException("Parameters: <Server> <Port> [--import <File> <Username> <Password>]");
         }
         
         String server = args[0];
         int port = Integer.parseInt(args[1]);
+
+        if (args.length == 6) {
+            importTasks(server, port, args[3], args[4], args[5]);
+            return;
+        }
         
-        try (Socket socket = new Socket(server, port);
-             Scanner input = new Scanner(System.in);
-             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-             PrintWriter writer = new PrintWriter(socket.getOutputStream(), true)) {
-            
-            // Read and display welcome messages from server
-            String serverMsg;
-            while ((serverMsg = reader.readLine()) != null) {
-                System.out.println(serverMsg);
-                if (serverMsg.contains("REGISTER") || serverMsg.contains("LOGIN")) {
-                    break;
-                }
-            }
+        try (TaskClient client = new TaskClient();
+             Scanner input = new Scanner(System.in)) {
+
+            // Connecting completes once the server's welcome message is in
+            TaskSession session = client.connect(server, port).join();
+            System.out.println(session.greeting().join());
             
             // Authentication loop (REGISTER/LOGIN)
             boolean authenticated = false;
             while (!authenticated) {
                 System.out.print("Enter command: ");
                 String command = input.nextLine();
-                writer.println(command);
                 
-                String response = reader.readLine();
-                if (response == null) break;
+                String response = session.send(command).join();
                 System.out.println(response);
                 
                 if (response.equals("LOGIN OK")) {
                     System.out.println("You are now logged in.");
                     authenticated = true;
+                    // Due tasks are announced while the prompt waits
+                    String reminders = session.reminders(push -> System.out.println("\n" + push)).join();
+                    if (!reminders.equals("Reminders on.")) System.out.println(reminders);
                 }
             }
             
             // Task management loop (ADD/VIEW/DELETE/LOGOUT)
             if (authenticated) {
                 boolean sessionActive = true;
+
+                // Last paged VIEW or SEARCH (without its PAGE option), for NEXT / PREV
+                String pagedView = null;
+                int page = 0, pageSize = 0, pageCount = 0;
+
                 while (sessionActive) {
-                    System.out.print("\nTask command (ADD/VIEW/DELETE/LOGOUT): ");
+                    System.out.print("\nTask command (ADD/VIEW/SEARCH/DELETE/NEXT/PREV/LOGOUT): ");
                     String taskCommand = input.nextLine();
-                    writer.println(taskCommand);
-                    
-                    // Read the complete multi-line response
-                    String line;
-                    boolean inTaskList = false;
-                    int separatorDashCount = 0; // Count only the long separator dashes
-                    
-                    while ((line = reader.readLine()) != null) {
-                        System.out.println(line);
-                        
-                        // Detect task list header
-                        if (line.contains("--- YOUR TASKS ---")) {
-                            inTaskList = true;
-                        } 
-                        // Count separator lines (long dashes, NOT the header)
-                        else if (inTaskList && line.startsWith("---") && line.length() > 50) {
-                            separatorDashCount++;
-                            // Task list has 2 separator lines (after header, at bottom)
-                            if (separatorDashCount >= 2) {
-                                break; // Complete task list received
-                            }
+
+                    String keyword = taskCommand.trim().toUpperCase();
+                    if (keyword.equals("NEXT") || keyword.equals("PREV")) {
+                        int target = keyword.equals("NEXT") ? page + 1 : page - 1;
+                        if (pagedView == null || target < 1 || target > pageCount) {
+                            System.out.println("No " + (keyword.equals("NEXT") ? "next" : "previous")
+                                    + " page. Use VIEW ... PAGE <n> SIZE <m> first.");
+                            continue;
                         }
-                        
-                        // Single-line responses (when not in a task list)
-                        if (!inTaskList && 
-                            (line.equals("Logged out.") || 
-                             line.startsWith("Usage:") || 
-                             line.startsWith("Unknown command") ||
-                             line.startsWith("Available") ||
-                             line.startsWith("Error"))) {
-                            break;
+                        taskCommand = withPage(pagedView, target, pageSize);
+                    }
+
+                    if (keyword.startsWith("VIEW") || keyword.startsWith("SEARCH")) {
+                        // Only the options before a SEARCH's TEXT words
+                        Matcher text = TEXT_OPTION.matcher(taskCommand);
+                        Matcher option = PAGE_OPTION.matcher(taskCommand);
+                        if (text.find()) option.region(0, text.start());
+                        if (option.find()) {
+                            pagedView = option.replaceFirst("");
+                            page = Integer.parseInt(option.group(1));
+                            pageSize = option.group(3) != null ? Integer.parseInt(option.group(3)) : 20;
+                        } else {
+                            pagedView = null;
                         }
                     }
+
+                    String response = session.send(taskCommand).join();
+                    if (!response.isEmpty()) System.out.println(response);
+
+                    // Remember where we are when paging
+                    Matcher footer = PAGE_FOOTER.matcher(response);
+                    if (footer.find()) {
+                        page = Integer.parseInt(footer.group(1));
+                        pageCount = Integer.parseInt(footer.group(2));
+                    }
                     
                     // Exit task loop if user logged out
                     if (taskCommand.toUpperCase().startsWith("LOGOUT")) {
@@ -91,10 +119,82 @@ public class TCPClient {
                 }
             }
             
-        } catch (UnknownHostException e) {
-            System.out.println("Server not found: " + e.getMessage());
+        } catch (CompletionException e) {
+            printError(e.getCause());
+        } catch (IOException e) {
+            printError(e);
+        } catch (NoSuchElementException e) {
+            // End of input
+        }
+    }
+
+    // Adds the PAGE option to a VIEW or SEARCH, ahead of any TEXT words since those run to the end of the line
+    private static String withPage(String command, int page, int size) {
+        String option = " PAGE " + page + " SIZE " + size;
+        Matcher text = TEXT_OPTION.matcher(command);
+        if (!text.find()) return command + option;
+        return command.substring(0, text.start()) + option + command.substring(text.start());
+    }
+
+    // Prints why the server couldn't be reached or the connection failed
+    private static void printError(Throwable error) {
+        if (error instanceof UnknownHostException) {
+            System.out.println("Server not found: " + error.getMessage());
+        } else {
+            System.out.println("I/O error: " + error.getMessage());
+        }
+    }
+
+    // Bulk import: each file line is an ADD or DELETE command, or just "<Category> <Date> <Description>".
+    // Lines are sent in BATCH blocks without waiting for each reply, with a few blocks in flight at a time.
+    private static void importTasks(String server, int port, String fileName, String username, String password) {
+        try (TaskClient client = new TaskClient();
+             BufferedReader file = new BufferedReader(new FileReader(fileName))) {
+
+            TaskSession session = client.connect(server, port).join();
+            String login = session.send("LOGIN " + username + " " + password).join();
+            if (!login.equals("LOGIN OK")) {
+                System.out.println("Import aborted: " + login);
+                return;
+            }
+
+            long start = System.nanoTime();
+            int sent = 0, batches = 0;
+            ArrayDeque<CompletableFuture<String>> inFlight = new ArrayDeque<>();
+            List<String> batch = new ArrayList<>(IMPORT_BATCH_SIZE);
+            String line;
+            while (true) {
+                line = file.readLine();
+                if (line != null) {
+                    line = line.trim();
+                    if (line.isEmpty()) continue;
+                    String keyword = line.split("\\s+", 2)[0].toUpperCase();
+                    if (!keyword.equals("ADD") && !keyword.equals("DELETE")) line = "ADD " + line;
+                    batch.add(line);
+                    sent++;
+                }
+                if (batch.size() == IMPORT_BATCH_SIZE || (line == null && !batch.isEmpty())) {
+                    // The oldest block's answer first, so the server isn't sent the whole file at once
+                    if (inFlight.size() == IMPORT_BATCHES_IN_FLIGHT) System.out.println(inFlight.poll().join());
+                    inFlight.add(session.batch(batch));
+                    batches++;
+                    batch = new ArrayList<>(IMPORT_BATCH_SIZE);
+                }
+                if (line == null) break;
+            }
+            while (!inFlight.isEmpty()) {
+                System.out.println(inFlight.poll().join());
+            }
+            System.out.println(session.send("LOGOUT").join());
+
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Imported %d commands in %d batches in %.2f s (%.0f commands/s)%n",
+                    sent, batches, seconds, sent / seconds);
+
+        } catch (CompletionException e) {
+            printError(e.getCause());
         } catch (IOException e) {
-            System.out.println("I/O error: " + e.getMessage());
+            printError(e);
         }
     }
-}
\ No newline at end of file
+}
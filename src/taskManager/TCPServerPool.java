@@ -1,36 +1,148 @@
 package taskManager;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+
+import javax.management.JMException;
 public class TCPServerPool {
+
+	// Starts up, runs a few commands over loopback and exits: a training run for an AppCDS archive
+	// (-XX:ArchiveClassesAtExit), so later starts with -XX:SharedArchiveFile skip most class loading
+	private static final boolean EXIT_AFTER_WARM_UP = Boolean.getBoolean("taskManager.exitAfterWarmUp");
+
 	public static void main(String[] args) throws IOException {
-		if (args.length != 2) {
-			throw new IllegalArgumentException("Parameter(s): <Port> <Threads>");
+		if (args.length < 2 || args.length > 3) {
+			throw new IllegalArgumentException("Parameter(s): <Port> <Threads> [pool|nio]");
 		}
 		int echoServPort = Integer.parseInt(args[0]);
 		int threadPoolSize = Integer.parseInt(args[1]);
-		final ServerSocket servSock = new ServerSocket(echoServPort);
+		String mode = args.length == 3 ? args[2].toLowerCase() : "pool";
 		final Logger logger = Logger.getLogger("practical");
+
+		// Load the credential index (and migrate old user files) before taking connections
+		logger.info("Loaded credentials for " + CredentialStore.userCount() + " users");
+		// Task files are only read when their user first needs them; this opens the store
+		TaskDataManager.open();
+
+		// Multi-process mode: which users live on this node (see ClusterRouter)
+		ClusterRouter.configure(echoServPort);
+
+		// Primary / replica mode: stream changes to replicas, or follow a primary read-only
+		ReplicationLog.start();
+		Replica.start();
+
+		try {
+			ServerMetrics.registerMBean();
+		} catch (JMException ex) {
+			logger.log(Level.WARNING, "Could not register metrics MBean", ex);
+		}
+
+		// nio: one selector thread for all sockets, <Threads> workers run the commands
+		if (mode.equals("nio")) {
+			logger.info("Starting NIO server with " + threadPoolSize + " worker threads");
+			NioTaskServer server = new NioTaskServer(echoServPort, threadPoolSize, logger);
+			ready(echoServPort, logger);
+			server.run();
+			return;
+		}
+		if (!mode.equals("pool")) {
+			throw new IllegalArgumentException("Unknown server mode: " + mode + " (use pool or nio)");
+		}
+
+		final ServerSocket servSock = new ServerSocket(echoServPort);
+		// Accepted connections wait here for a free thread; its size is the accept-queue gauge
+		final BlockingQueue<Socket> acceptQueue = new LinkedBlockingQueue<>();
+		ServerMetrics.setAcceptQueue(acceptQueue::size);
 			// Spawn a fixed number of threads to service clients
 			for (int i = 0; i < threadPoolSize; i++) {
 				Thread thread = new Thread() {
 					public void run() {
 						while (true) {
 							try {
-								Socket clientSock = servSock.accept(); // Wait for a connection
-								TaskManagementProtocol.handleClient(clientSock, logger); // Handle it
+								Socket clientSock = acceptQueue.take(); // Wait for a connection
+								try {
+									TaskManagementProtocol.handleClient(clientSock, logger); // Handle it
+								} finally {
+									ConnectionLimits.closed();
+								}
 							}
-							catch (IOException ex) {
-								logger.log(Level.WARNING, "Client accept failed", ex);
+							catch (InterruptedException ex) {
+								return;
 							}
 						}
 					}
 				};
 				thread.start();
 				logger.info("Created and started Thread = " + thread.getName());
-			}	
+			}
+			ready(echoServPort, logger);
+			// Accept on this thread so waiting connections are visible in the metrics
+			while (true) {
+				try {
+					Socket clientSock = servSock.accept();
+					if (ConnectionLimits.tryOpen()) {
+						acceptQueue.add(clientSock);
+					} else {
+						rejectBusy(clientSock);
+					}
+				}
+				catch (IOException ex) {
+					logger.log(Level.WARNING, "Client accept failed", ex);
+				}
+			}
+	}
+
+	// Logs the startup time once connections are being accepted, and starts the warm-up run if asked for
+	private static void ready(int port, Logger logger) {
+		logger.info("Ready for connections " + ManagementFactory.getRuntimeMXBean().getUptime() + " ms after start");
+		if (!EXIT_AFTER_WARM_UP) return;
+
+		Thread warmUp = new Thread(() -> {
+			TaskDataManager.warmUp();
+			// Commands that touch no stored user: no such login, a query without a session
+			try (Socket socket = new Socket("localhost", port);
+				 BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+				 PrintWriter writer = new PrintWriter(socket.getOutputStream(), true)) {
+				skipResponse(reader);
+				for (String command : new String[] { "LOGIN - -", "VIEW", "LOGOUT" }) {
+					writer.println(command);
+					skipResponse(reader);
+				}
+			} catch (IOException ex) {
+				logger.log(Level.WARNING, "Warm-up run failed", ex);
+			}
+			logger.info("Warm-up done, exiting");
+			System.exit(0);
+		}, "warm-up");
+		warmUp.start();
+	}
+
+	private static void skipResponse(BufferedReader reader) throws IOException {
+		String line;
+		while ((line = reader.readLine()) != null && !line.equals(TaskManagementProtocol.END_OF_RESPONSE)) {
+			// Read and dropped
+		}
+	}
+
+	// Over the connection limit: answer with one framed error and close, without taking a thread
+	private static void rejectBusy(Socket clientSock) {
+		try (Socket sock = clientSock) {
+			PrintWriter writer = new PrintWriter(new OutputStreamWriter(sock.getOutputStream()));
+			writer.println(ConnectionLimits.BUSY);
+			writer.println(TaskManagementProtocol.END_OF_RESPONSE);
+			writer.flush();
+		} catch (IOException ignored) {
+			// The client is gone already
+		}
 	}
 }
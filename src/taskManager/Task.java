@@ -0,0 +1,82 @@
+package taskManager;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+
+/**
+ * One task of a user, as held in memory.
+ * The category is kept as its TaskCategory ordinal and the due date as an
+ * epoch day, so filtering and formatting rows never parse strings.
+ * Tasks are immutable and can be shared between the resident data and VIEW pages.
+ */
+final class Task {
+
+    final int id;
+    final byte category;
+    final int epochDay;
+    final String description;
+
+    Task(int id, int category, int epochDay, String description) {
+        this.id = id;
+        this.category = (byte) category;
+        this.epochDay = epochDay;
+        this.description = description;
+    }
+
+    /**
+     * Builds a task from already validated command arguments.
+     * Throws IllegalArgumentException or DateTimeException on bad input.
+     */
+    static Task of(int id, String category, String date, String description) {
+        int ordinal = TaskCategory.ordinalOf(category);
+        if (ordinal < 0) throw new IllegalArgumentException("Unknown category: " + category);
+        if (!isValidDescription(description)) throw new IllegalArgumentException("Control character in description");
+        return new Task(id, ordinal, epochDay(date), description);
+    }
+
+    /**
+     * Whether a description can be stored: no control characters, since a '\r' or '\n'
+     * would end the line in the task file and the rest would be read as a journal record
+     */
+    static boolean isValidDescription(String description) {
+        for (int i = 0; i < description.length(); i++) {
+            if (Character.isISOControl(description.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Parses a YYYY-MM-DD date into an epoch day.
+     * Throws DateTimeException if it is malformed or too far out to store.
+     */
+    static int epochDay(String date) {
+        long day = LocalDate.parse(date).toEpochDay();
+        if (day != (int) day) throw new DateTimeException("Date out of range: " + date);
+        return (int) day;
+    }
+
+    /**
+     * Parses a stored line (taskId|category|date|description), returning null if it is malformed
+     */
+    static Task parse(String line) {
+        int first = line.indexOf('|');
+        int second = first < 0 ? -1 : line.indexOf('|', first + 1);
+        int third = second < 0 ? -1 : line.indexOf('|', second + 1);
+        if (third < 0) return null;
+        try {
+            return of(Integer.parseInt(line.substring(0, first)), line.substring(first + 1, second),
+                    line.substring(second + 1, third), line.substring(third + 1));
+        } catch (IllegalArgumentException | DateTimeException e) {
+            return null;
+        }
+    }
+
+    String categoryName() {
+        return TaskCategory.nameOf(category);
+    }
+
+    // The stored line: taskId|category|date|description
+    String toLine() {
+        return id + "|" + categoryName() + "|" + LocalDate.ofEpochDay(epochDay) + "|" + description;
+    }
+}
@@ -0,0 +1,473 @@
+package taskManager;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admin jobs over every user's task files: export, import and reports.
+ * Users are processed in parallel (taskManager.adminThreads, default one per CPU),
+ * each worker holding one user's tasks at a time, so memory stays bounded however
+ * many users there are. Run it while the server is stopped; anything left in the
+ * commit log is replayed first, as at server startup.
+ *
+ * Usage: TaskAdmin export <csv|json> <File>
+ *        TaskAdmin import <csv|json> <File>
+ *        TaskAdmin report [<YYYY-MM-DD>]
+ *
+ * Rows are user,id,category,date,description. CSV has a header line and quotes
+ * fields as in RFC 4180; JSON is one object per line. Import appends the tasks to
+ * existing users under new task IDs (the id column is ignored).
+ */
+public class TaskAdmin {
+
+    private static final int THREADS = Integer.getInteger("taskManager.adminThreads",
+            Runtime.getRuntime().availableProcessors());
+
+    // Import rows held in memory before they are written out
+    private static final int IMPORT_BUFFER_ROWS = 100_000;
+
+    private static final String CSV_HEADER = "user,id,category,date,description";
+
+    // Upper bounds (inclusive, in days late) of the overdue histogram's buckets; the last is open
+    private static final int[] OVERDUE_BUCKETS = { 7, 30, 90, 365 };
+
+    private static final TaskStore STORE = TaskStore.configured();
+
+    public static void main(String[] args) throws IOException {
+        boolean transfer = args.length == 3 && (args[0].equals("export") || args[0].equals("import"))
+                && (args[1].equals("csv") || args[1].equals("json"));
+        boolean report = args.length <= 2 && args.length >= 1 && args[0].equals("report");
+        if (!transfer && !report) {
+            throw new IllegalArgumentException(
+                    "Parameters: export <csv|json> <File> | import <csv|json> <File> | report [<YYYY-MM-DD>]");
+        }
+
+        int replayed = CommitLog.recover(CommitLog.FILE, STORE);
+        if (replayed > 0) System.out.println("Recovered " + replayed + " journal records from " + CommitLog.FILE);
+
+        long start = System.nanoTime();
+        Totals totals;
+        if (report) {
+            int today = (int) (args.length == 2 ? LocalDate.parse(args[1]) : LocalDate.now()).toEpochDay();
+            totals = report(today);
+        } else if (args[0].equals("export")) {
+            totals = export(args[1].equals("json"), args[2]);
+        } else {
+            totals = importTasks(args[1].equals("json"), args[2]);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d user files, %d tasks in %.2f s (%.0f files/s, %.0f tasks/s)%n",
+                totals.files.get(), totals.tasks.get(), seconds,
+                totals.files.get() / seconds, totals.tasks.get() / seconds);
+    }
+
+    // Files and tasks gone through, for the throughput line
+    private static final class Totals {
+        final AtomicInteger files = new AtomicInteger();
+        final AtomicLong tasks = new AtomicLong();
+    }
+
+    // Runs a job (typically a parallel stream over the users) on a pool of THREADS workers
+    static void inParallel(Runnable job) {
+        inParallel(Executors.callable(job));
+    }
+
+    private static <T> T inParallel(Callable<T> job) {
+        ForkJoinPool pool = new ForkJoinPool(THREADS);
+        try {
+            return pool.submit(job).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) throw (UncheckedIOException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // A user's tasks, or null (with a message) if they can't be read
+    private static UserTasks load(String username) {
+        try {
+            UserTasks data = STORE.loadUnindexed(username);
+            if (data == null) System.out.println(username + ": no task file, skipped");
+            return data;
+        } catch (IOException e) {
+            System.out.println(username + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Export
+
+    private static Totals export(boolean json, String fileName) throws IOException {
+        Totals totals = new Totals();
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fileName), StandardCharsets.UTF_8), 1 << 16)) {
+            if (!json) out.write(CSV_HEADER + "\n");
+            inParallel(() -> STORE.usernames().parallelStream().forEach(username -> {
+                UserTasks data = load(username);
+                if (data == null) return;
+                // A user's rows are put together first and written in one go, so users never interleave
+                StringBuilder rows = new StringBuilder();
+                for (Task task : data.tasks.values()) {
+                    if (json) appendJson(rows, username, task); else appendCsv(rows, username, task);
+                }
+                try {
+                    synchronized (out) {
+                        out.append(rows);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                totals.files.incrementAndGet();
+                totals.tasks.addAndGet(data.tasks.size());
+            }));
+        }
+        System.out.println("Exported to " + fileName);
+        return totals;
+    }
+
+    private static void appendCsv(StringBuilder sb, String username, Task task) {
+        sb.append(csvField(username)).append(',').append(task.id).append(',').append(task.categoryName())
+                .append(',').append(LocalDate.ofEpochDay(task.epochDay)).append(',')
+                .append(csvField(task.description)).append('\n');
+    }
+
+    private static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static void appendJson(StringBuilder sb, String username, Task task) {
+        sb.append("{\"user\":");
+        jsonString(sb, username);
+        sb.append(",\"id\":").append(task.id).append(",\"category\":\"").append(task.categoryName())
+                .append("\",\"date\":\"").append(LocalDate.ofEpochDay(task.epochDay)).append("\",\"description\":");
+        jsonString(sb, task.description);
+        sb.append("}\n");
+    }
+
+    private static void jsonString(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    // Import
+
+    // What import knows about a user; each is only touched by the worker writing that user's rows
+    private static final class ImportedUser {
+        boolean loaded;
+        boolean missing;
+        int tasks;
+        int nextId;
+    }
+
+    private static Totals importTasks(boolean json, String fileName) throws IOException {
+        Totals totals = new Totals();
+        Map<String, ImportedUser> users = new HashMap<>();
+        Map<String, List<Task>> buffered = new LinkedHashMap<>();
+        int bufferedRows = 0, lineNumber = 0, rejected = 0;
+
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(fileName), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || (!json && lineNumber == 1 && line.equals(CSV_HEADER))) continue;
+                String[] row = json ? parseJson(line) : parseCsv(line);
+                Task task = null;
+                // Control characters (e.g. an escaped "\n" in JSON) would end the journal line
+                // and turn the rest into a record of its own, so such rows are malformed
+                if (row != null && !row[0].isEmpty() && Task.isValidDescription(row[0]) && Task.isValidDescription(row[4])) {
+                    try {
+                        task = Task.of(0, row[2], row[3], row[4]);
+                    } catch (IllegalArgumentException | DateTimeException e) {
+                        // Reported below
+                    }
+                }
+                if (task == null) {
+                    if (rejected++ < 10) System.out.println("Line " + lineNumber + " skipped: " + line);
+                    continue;
+                }
+                users.computeIfAbsent(row[0], u -> new ImportedUser());
+                buffered.computeIfAbsent(row[0], u -> new ArrayList<>()).add(task);
+                if (++bufferedRows == IMPORT_BUFFER_ROWS) {
+                    writeImported(buffered, users, totals);
+                    buffered.clear();
+                    bufferedRows = 0;
+                }
+            }
+        }
+        writeImported(buffered, users, totals);
+
+        // The manifest's task figures for these users are now behind their files
+        if (UserManifest.FILE.exists() && CredentialStore.userCount() > 0) {
+            users.forEach((username, user) -> {
+                if (user.loaded) UserManifest.recordTasks(username, STORE.size(username), user.tasks, user.nextId);
+            });
+            UserManifest.save();
+        }
+
+        long missing = users.values().stream().filter(user -> user.missing).count();
+        System.out.println("Imported into " + (users.size() - missing) + " users; skipped " + missing
+                + " users without a task file and " + rejected + " malformed lines");
+        return totals;
+    }
+
+    // Appends buffered tasks to their users' files, a few users in parallel. Task IDs carry on
+    // from each user's nextId, and every user is loaded only the first time for their figures.
+    private static void writeImported(Map<String, List<Task>> buffered, Map<String, ImportedUser> users, Totals totals) {
+        inParallel(() -> buffered.entrySet().parallelStream().forEach(rows -> {
+            String username = rows.getKey();
+            ImportedUser user = users.get(username);
+            if (!user.loaded && !user.missing) {
+                UserTasks data = load(username);
+                if (data == null) {
+                    user.missing = true;
+                } else {
+                    user.loaded = true;
+                    user.tasks = data.tasks.size();
+                    user.nextId = data.nextId;
+                }
+            }
+            if (user.missing) return;
+
+            List<String> records = new ArrayList<>(rows.getValue().size());
+            for (Task task : rows.getValue()) {
+                records.add(TaskJournal.addRecord(new Task(user.nextId++, task.category, task.epochDay, task.description)));
+            }
+            try {
+                STORE.append(username, records, true);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            user.tasks += records.size();
+            totals.files.incrementAndGet();
+            totals.tasks.addAndGet(records.size());
+        }));
+    }
+
+    // user, id, category, date, description from a CSV line, or null if it is malformed
+    static String[] parseCsv(String line) {
+        List<String> fields = new ArrayList<>(5);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return quoted || fields.size() != 5 ? null : fields.toArray(new String[0]);
+    }
+
+    private static final String[] JSON_KEYS = { "user", "id", "category", "date", "description" };
+
+    // The same fields from a flat JSON object with string or number values, or null if it is malformed
+    static String[] parseJson(String line) {
+        String[] row = new String[JSON_KEYS.length];
+        int[] pos = { skipSpace(line, 0) };
+        if (!expect(line, pos, '{')) return null;
+        while (true) {
+            String key = jsonToken(line, pos);
+            if (key == null || !expect(line, pos, ':')) return null;
+            String value = jsonToken(line, pos);
+            if (value == null) return null;
+            for (int i = 0; i < JSON_KEYS.length; i++) {
+                if (JSON_KEYS[i].equals(key)) row[i] = value;
+            }
+            if (expect(line, pos, '}')) break;
+            if (!expect(line, pos, ',')) return null;
+        }
+        for (String value : row) {
+            if (value == null) return null;
+        }
+        return row;
+    }
+
+    private static boolean expect(String line, int[] pos, char c) {
+        if (pos[0] >= line.length() || line.charAt(pos[0]) != c) return false;
+        pos[0] = skipSpace(line, pos[0] + 1);
+        return true;
+    }
+
+    private static int skipSpace(String line, int i) {
+        while (i < line.length() && Character.isWhitespace(line.charAt(i))) i++;
+        return i;
+    }
+
+    // A string (unescaped) or bare number at pos, or null
+    private static String jsonToken(String line, int[] pos) {
+        int i = pos[0];
+        if (i >= line.length()) return null;
+        StringBuilder sb = new StringBuilder();
+        if (line.charAt(i) != '"') {
+            while (i < line.length() && (Character.isDigit(line.charAt(i)) || line.charAt(i) == '-')) {
+                sb.append(line.charAt(i++));
+            }
+            if (sb.length() == 0) return null;
+        } else {
+            for (i++; ; i++) {
+                if (i >= line.length()) return null;
+                char c = line.charAt(i);
+                if (c == '"') break;
+                if (c == '\\') {
+                    if (++i >= line.length()) return null;
+                    char escaped = line.charAt(i);
+                    switch (escaped) {
+                        case 'u':
+                            if (i + 4 >= line.length()) return null;
+                            try {
+                                sb.append((char) Integer.parseInt(line.substring(i + 1, i + 5), 16));
+                            } catch (NumberFormatException e) {
+                                return null;
+                            }
+                            i += 4;
+                            break;
+                        case 'n': sb.append('\n'); break;
+                        case 't': sb.append('\t'); break;
+                        case 'r': sb.append('\r'); break;
+                        case 'b': sb.append('\b'); break;
+                        case 'f': sb.append('\f'); break;
+                        default: sb.append(escaped);
+                    }
+                } else {
+                    sb.append(c);
+                }
+            }
+            i++;
+        }
+        pos[0] = skipSpace(line, i);
+        return sb.toString();
+    }
+
+    // Report
+
+    // Counts over a set of users; the workers' partial reports are merged at the end
+    private static final class Report {
+        final int today;
+        final long[] byCategory = new long[TaskCategory.count()];
+        final long[] overdueByCategory = new long[TaskCategory.count()];
+        final long[] overdueByDays = new long[OVERDUE_BUCKETS.length + 1];
+        long dueToday, dueThisWeek, dueLater;
+        int files;
+        long tasks;
+
+        Report(int today) {
+            this.today = today;
+        }
+
+        void add(UserTasks data) {
+            files++;
+            tasks += data.tasks.size();
+            for (Task task : data.tasks.values()) {
+                byCategory[task.category]++;
+                int late = today - task.epochDay;
+                if (late > 0) {
+                    overdueByCategory[task.category]++;
+                    int bucket = 0;
+                    while (bucket < OVERDUE_BUCKETS.length && late > OVERDUE_BUCKETS[bucket]) bucket++;
+                    overdueByDays[bucket]++;
+                } else if (late == 0) {
+                    dueToday++;
+                } else if (late >= -7) {
+                    dueThisWeek++;
+                } else {
+                    dueLater++;
+                }
+            }
+        }
+
+        void merge(Report other) {
+            for (int i = 0; i < byCategory.length; i++) {
+                byCategory[i] += other.byCategory[i];
+                overdueByCategory[i] += other.overdueByCategory[i];
+            }
+            for (int i = 0; i < overdueByDays.length; i++) {
+                overdueByDays[i] += other.overdueByDays[i];
+            }
+            dueToday += other.dueToday;
+            dueThisWeek += other.dueThisWeek;
+            dueLater += other.dueLater;
+            files += other.files;
+            tasks += other.tasks;
+        }
+    }
+
+    private static Totals report(int today) {
+        // Each user is loaded, counted and dropped; only the counts are kept
+        Report report = inParallel(() -> STORE.usernames().parallelStream()
+                .map(TaskAdmin::load)
+                .filter(Objects::nonNull)
+                .collect(() -> new Report(today), Report::add, Report::merge));
+
+        System.out.println("Tasks as of " + LocalDate.ofEpochDay(today) + ":");
+        System.out.printf("%-12s %12s %12s%n", "CATEGORY", "TASKS", "OVERDUE");
+        for (int i = 0; i < report.byCategory.length; i++) {
+            System.out.printf("%-12s %12d %12d%n", TaskCategory.nameOf(i), report.byCategory[i], report.overdueByCategory[i]);
+        }
+        System.out.println("Overdue by days late:");
+        int from = 1;
+        for (int i = 0; i < report.overdueByDays.length; i++) {
+            String range = i < OVERDUE_BUCKETS.length ? from + "-" + OVERDUE_BUCKETS[i] : "over " + (from - 1);
+            System.out.printf("  %-12s %12d%n", range, report.overdueByDays[i]);
+            if (i < OVERDUE_BUCKETS.length) from = OVERDUE_BUCKETS[i] + 1;
+        }
+        System.out.printf("Due today: %d, in the next 7 days: %d, later: %d%n",
+                report.dueToday, report.dueThisWeek, report.dueLater);
+
+        Totals totals = new Totals();
+        totals.files.set(report.files);
+        totals.tasks.set(report.tasks);
+        return totals;
+    }
+}
@@ -1,4 +1,3 @@
-
 package taskManager;
 
 import java.util.*;
@@ -6,40 +5,80 @@ import java.util.*;
 /**
  * Manages predefined task categories for the task management system.
  * Provides validation and category listing functionality.
+ * A category's ordinal is its compact code in Task and on disk, so new
+ * categories must only ever be added at the end.
  */
-public class TaskCategory {
-    
-    // Predefined categories - can be easily modified or loaded from config
-    private static final Set<String> VALID_CATEGORIES = new LinkedHashSet<>(Arrays.asList(
-        "WORK", "PERSONAL", "SHOPPING", "HEALTH", "EDUCATION", "FINANCE", "TRAVEL", "HOME"
-    ));
-    
+public enum TaskCategory {
+
+    WORK, PERSONAL, SHOPPING, HEALTH, EDUCATION, FINANCE, TRAVEL, HOME;
+
+    // Shared copy of values(), which clones the array on every call
+    private static final TaskCategory[] VALUES = values();
+
+    /**
+     * Returns the category with the given name (case-insensitive), or null if there is none
+     */
+    public static TaskCategory parse(String category) {
+        if (category == null) return null;
+        for (TaskCategory value : VALUES) {
+            if (value.name().equalsIgnoreCase(category)) return value;
+        }
+        return null;
+    }
+
     /**
      * Validates if a category name is valid (case-insensitive)
      */
     public static boolean isValidCategory(String category) {
-        return category != null && VALID_CATEGORIES.contains(category.toUpperCase());
+        return parse(category) != null;
     }
-    
+
     /**
      * Returns the properly formatted category name
      */
     public static String formatCategory(String category) {
         return category != null ? category.toUpperCase() : null;
     }
-    
+
     /**
      * Returns all available categories as a formatted string
      */
     public static String getAvailableCategories() {
-        return "Available Categories: " + String.join(", ", VALID_CATEGORIES);
+        return "Available Categories: " + String.join(", ", getCategoryList());
+    }
+
+
+    /**
+     * Returns the position of a category in the fixed category list, or -1 if it isn't one.
+     * Used as the compact on-disk category code.
+     */
+    public static int ordinalOf(String category) {
+        TaskCategory value = parse(category);
+        return value == null ? -1 : value.ordinal();
+    }
+
+    /**
+     * Returns the category name at a position returned by ordinalOf
+     */
+    public static String nameOf(int ordinal) {
+        return VALUES[ordinal].name();
+    }
+
+    /**
+     * Returns the number of categories, one past the highest ordinal
+     */
+    public static int count() {
+        return VALUES.length;
     }
 
-    
     /**
      * Returns all valid categories as a list
      */
     public static List<String> getCategoryList() {
-        return new ArrayList<>(VALID_CATEGORIES);
+        List<String> names = new ArrayList<>(VALUES.length);
+        for (TaskCategory value : VALUES) {
+            names.add(value.name());
+        }
+        return names;
     }
 }
\ No newline at end of file
@@ -0,0 +1,174 @@
+package taskManager;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.UnknownHostException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous client library for the task server, for scripts and load tools.
+ * A TaskClient runs a few I/O threads, each with one Selector serving any number
+ * of connections (TaskSession). Commands are pipelined on a connection and every
+ * response arrives as a CompletableFuture, matched up by the end-of-response line.
+ *
+ *   try (TaskClient client = new TaskClient()) {
+ *       TaskSession session = client.connect("localhost", 5555).join();
+ *       session.login("alice", "secret").join();
+ *       session.send("VIEW PAGE 1 SIZE 20").thenAccept(System.out::println).join();
+ *   }
+ *
+ * Futures complete on the I/O thread of their connection, so dependent actions
+ * should be short or use the *Async variants. TaskSessionPool spreads one user's
+ * commands over several connections.
+ */
+public class TaskClient implements AutoCloseable {
+
+    // Time allowed for the server's greeting after connecting
+    static final long CONNECT_TIMEOUT_MS = Long.getLong("taskManager.clientConnectTimeoutMs", 10_000);
+
+    private final IoLoop[] loops;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+
+    // One I/O thread
+    public TaskClient() throws IOException {
+        this(1);
+    }
+
+    public TaskClient(int ioThreads) throws IOException {
+        if (ioThreads < 1) throw new IllegalArgumentException("At least one I/O thread needed");
+        loops = new IoLoop[ioThreads];
+        for (int i = 0; i < ioThreads; i++) {
+            loops[i] = new IoLoop("task-client-io-" + i);
+        }
+    }
+
+    /**
+     * Opens a connection, completing once the server's greeting has arrived.
+     * Fails with an IOException if the server can't be reached, turns the connection away
+     * or sends no greeting within taskManager.clientConnectTimeoutMs (default 10000).
+     */
+    public CompletableFuture<TaskSession> connect(String host, int port) {
+        CompletableFuture<TaskSession> result = new CompletableFuture<>();
+        InetSocketAddress address = new InetSocketAddress(host, port);
+        if (address.isUnresolved()) {
+            result.completeExceptionally(new UnknownHostException(host));
+            return result;
+        }
+
+        IoLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+        if (!loop.running) {
+            result.completeExceptionally(new IOException("Client closed"));
+            return result;
+        }
+        TaskSession session;
+        try {
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            session = new TaskSession(channel, loop);
+            loop.execute(() -> session.connect(address));
+        } catch (IOException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        // A full accept queue can leave the connection open on this side only, with nothing ever arriving
+        session.greeting().orTimeout(CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS).whenComplete((greeting, error) -> {
+            if (error instanceof TimeoutException) {
+                session.close();
+                result.completeExceptionally(new IOException("No greeting from " + host + ":" + port
+                        + " within " + CONNECT_TIMEOUT_MS + " ms"));
+            } else if (error != null) {
+                result.completeExceptionally(error);
+            } else if (greeting.startsWith("Error:")) {
+                // e.g. the server is at its connection limit
+                session.close();
+                result.completeExceptionally(new IOException(greeting));
+            } else {
+                result.complete(session);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Stops the I/O threads; commands still waiting for a response fail
+     */
+    @Override
+    public void close() {
+        for (IoLoop loop : loops) {
+            loop.close();
+        }
+    }
+
+    // One selector thread and the connections registered with it
+    static final class IoLoop implements Runnable {
+        final Selector selector;
+        private final Thread thread;
+        // Work for the loop thread, such as registering a new channel
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private volatile boolean running = true;
+
+        IoLoop(String name) throws IOException {
+            selector = Selector.open();
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        // Sets a key's interest from any thread; another thread's change takes effect at the next select
+        void interest(SelectionKey key, int ops) {
+            if (!key.isValid() || key.interestOps() == ops) return;
+            key.interestOps(ops);
+            if (Thread.currentThread() != thread) selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    selector.select();
+                } catch (IOException e) {
+                    break;
+                }
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                for (SelectionKey key : selector.selectedKeys()) {
+                    TaskSession session = (TaskSession) key.attachment();
+                    if (key.isValid() && key.isConnectable()) session.finishConnect();
+                    if (key.isValid() && key.isReadable()) session.read();
+                    if (key.isValid() && key.isWritable()) session.flush();
+                }
+                selector.selectedKeys().clear();
+            }
+
+            for (SelectionKey key : selector.keys()) {
+                ((TaskSession) key.attachment()).fail(new IOException("Client closed"));
+            }
+            try {
+                selector.close();
+            } catch (IOException ignored) {}
+        }
+
+        void close() {
+            running = false;
+            selector.wakeup();
+        }
+    }
+}
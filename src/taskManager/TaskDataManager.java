@@ -1,219 +1,894 @@
 package taskManager;
 
 import java.io.*;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Manages task data storage and retrieval using file-based storage.
- * Each user has their own file in the data/ directory.
- * File format:
- * Line 1: password
- * Line 2: nextId:N (tracks next available task ID)
- * Line 3+: taskId|category|date|description
+ * Each user has their own append-only file (format described in TaskJournal),
+ * kept by the TaskStore from TaskStore.configured() - in data/ by default.
+ *
+ * A user's file is loaded into memory once (on LOGIN or first access) and the
+ * resident copy is the source of truth from then on. ADD and DELETE change
+ * memory and queue journal records, which reach the file as the configured
+ * DurabilityPolicy says: fsynced by a group commit (default), fsynced per
+ * change, or appended in the background every taskManager.flushIntervalMs
+ * milliseconds (default 1000) without fsync. Records left over are also written
+ * when the user's last session logs out and on shutdown. A background compactor rewrites a user's
+ * file once it holds taskManager.compactTombstones (default 500) dead records,
+ * as a binary snapshot when taskManager.storageFormat=binary.
+ *
+ * Access is guarded per user through UserLockRegistry, so different
+ * users' data is read and written in parallel.
+ *
+ * What is known of every user's files without loading them (size, task count,
+ * next ID) is kept up to date in the UserManifest, which the storage thread
+ * writes out every taskManager.manifestIntervalMs and on shutdown.
  */
 public class TaskDataManager {
 
-    private static final String DATA_DIR = "data/";
-    
-    // Create data directory if it doesn't exist
+    private static final TaskStore STORE = TaskStore.configured();
+
+    private static final long FLUSH_INTERVAL_MS = Long.getLong("taskManager.flushIntervalMs", 1000);
+
+    private static final int COMPACT_TOMBSTONES = Integer.getInteger("taskManager.compactTombstones", 500);
+
+    // "binary" makes compaction write BinaryTaskFile snapshots instead of full text files
+    private static final boolean BINARY_SNAPSHOTS = "binary".equals(System.getProperty("taskManager.storageFormat", "text"));
+
+    private static final DurabilityPolicy DURABILITY = DurabilityPolicy.configured();
+
+    private static final long GROUP_COMMIT_MS = Long.getLong("taskManager.groupCommitMs", 0);
+
+    // Commit log size that triggers a checkpoint (user files fsynced, log emptied)
+    private static final long CHECKPOINT_BYTES = Long.getLong("taskManager.commitLogBytes", 4 << 20);
+
+    private static final Logger logger = Logger.getLogger("practical");
+
+    // Added to a response whose change is in memory but couldn't be written to disk yet
+    private static final String NOT_SAVED = "\n>> WARNING: Change not saved to disk yet, it will be retried.";
+
+    private static final String ROW_FORMAT = "%-10s | %-12s | %-12s | %s\n";
+    private static final String SEPARATOR = "----------------------------------------------------------------------------------\n";
+
+    // Title, column headings and separator; rows are written by TaskRowFormatter
+    private static final String TABLE_HEADER = "\n--- YOUR TASKS ---\n"
+            + String.format(ROW_FORMAT, "ID", "CATEGORY", "DATE", "DESCRIPTION") + SEPARATOR;
+
+    // ViewCache key of the unfiltered VIEW
+    private static final String ALL_TASKS = new TaskQuery().cacheKey();
+
+    private static final Comparator<Task> BY_DUE_DATE =
+            Comparator.<Task>comparingInt(task -> task.epochDay).thenComparingInt(task -> task.id);
+
+    // Reminders cover tasks due before this many days from today (and overdue ones)
+    private static final int REMINDER_DAYS = 4;
+
+    // Users currently held in memory
+    private static final Map<String, UserTasks> RESIDENT = new ConcurrentHashMap<>();
+
+    // Group durability policy only: the shared log each group commit appends to, and its committer
+    private static final CommitLog COMMIT_LOG = openCommitLog();
+    private static final GroupCommitter COMMITTER =
+            COMMIT_LOG != null ? new GroupCommitter(GROUP_COMMIT_MS, TaskDataManager::groupCommit) : null;
+
+    // Users whose files were appended to without fsync since the last checkpoint
+    private static final Set<String> UNSYNCED = ConcurrentHashMap.newKeySet();
+
+    // Runs the flusher and the compactor, so a long compaction doesn't hold back flushes
+    private static final ScheduledExecutorService STORAGE = Executors.newScheduledThreadPool(2, r -> {
+        Thread thread = new Thread(r, "task-storage");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Start write-behind, compaction and manifest saves, flush on shutdown
     static {
-        new File(DATA_DIR).mkdirs();
+        STORAGE.scheduleWithFixedDelay(TaskDataManager::flushAll,
+                FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        STORAGE.scheduleWithFixedDelay(TaskDataManager::compactAll,
+                FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        STORAGE.scheduleWithFixedDelay(UserManifest::saveIfChanged,
+                UserManifest.SAVE_INTERVAL_MS, UserManifest.SAVE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            flushAll();
+            UserManifest.saveIfChanged();
+        }, "task-flush-on-exit"));
+    }
+
+    // Called at startup so the store is opened and the commit log recovered before clients connect;
+    // the static initializer does the work
+    static void open() {
+    }
+
+    // Runs the parsing and VIEW / SEARCH rendering paths once over made-up tasks, touching no user
+    // or file, so their classes are loaded and in an AppCDS archive dumped after a warm-up run
+    static void warmUp() {
+        UserTasks data = new UserTasks();
+        for (int i = 1; i <= 20; i++) {
+            data.put(Task.parse(i + "|" + TaskCategory.nameOf(i % TaskCategory.count()) + "|2026-01-"
+                    + String.format("%02d", i) + "|Warm-up task " + i));
+        }
+        PrintWriter out = new PrintWriter(Writer.nullWriter());
+        String[][] commands = { { "VIEW", "PAGE", "1", "SIZE", "5" }, { "VIEW", "FROM", "2026-01-05", "TO", "2026-01-10" },
+                { "SEARCH", "CATEGORY", "WORK", "TEXT", "warm", "task" } };
+        for (String[] command : commands) {
+            TaskQuery query = TaskQuery.parse(command, 1, command[0].equals("SEARCH"));
+            List<Task> page = new ArrayList<>();
+            writeTasks(page, findTasks(data, query, page), query, out);
+        }
+        formatReminders(new ArrayList<>(data.tasks.values()), (int) LocalDate.now().toEpochDay());
+        formatTasks(data);
     }
-    
+
+    // Creates the empty task file of a newly registered user; false if it already exists
+    public static boolean createUser(String username) throws IOException {
+        return STORE.create(username);
+    }
+
+    // True if the user has a task file, whether or not they are registered
+    public static boolean userFileExists(String username) {
+        return STORE.textFile(username).exists();
+    }
+
+    // Loads the user's tasks into memory for a newly logged-in session
+    public static void openUser(String username) {
+        ReentrantReadWriteLock.WriteLock lock = UserLockRegistry.writeLock(username);
+        try {
+            UserTasks data = residentTasks(username);
+            if (data != null) data.sessions++;
+        } finally {
+            lock.unlock();
+            releaseLock(username);
+        }
+    }
+
+    // Flushes the user's pending changes; drops them from memory once no session is left
+    public static void closeUser(String username) {
+        ReentrantReadWriteLock.WriteLock lock = UserLockRegistry.writeLock(username);
+        try {
+            UserTasks data = RESIDENT.get(username);
+            if (data == null) return;
+            if (data.sessions > 0) data.sessions--;
+            // Fsynced here, so records still waiting for a group commit no longer need it
+            if (flush(username, data, DURABILITY.syncs())) data.unlogged.clear();
+            if (data.sessions == 0 && data.pending.isEmpty()) {
+                RESIDENT.remove(username);
+                // A reload starts with no views; these would only take up the cache
+                ViewCache.invalidate(data);
+            }
+        } finally {
+            lock.unlock();
+            releaseLock(username);
+        }
+    }
+
     //	Retrieves and formats all tasks for a user
-    public static synchronized String getFormattedTasks(String username) {
-        File file = new File(DATA_DIR + username + ".txt");
-        if (!file.exists()) return "No account found.";
+    public static String getFormattedTasks(String username) {
+        UserTasks data = lockForRead(username);
+        if (data == null) return "No account found.";
+        try {
+            return allTasksTable(data);
+        } finally {
+            UserLockRegistry.lockFor(username).readLock().unlock();
+        }
+    }
 
-        StringBuilder sb = new StringBuilder();
-        sb.append("\n--- YOUR TASKS ---\n");
-        sb.append(String.format("%-10s | %-12s | %-12s | %s\n", "ID", "CATEGORY", "DATE", "DESCRIPTION"));
-        sb.append("----------------------------------------------------------------------------------\n");
-
-        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-            br.readLine(); // Skip password line
-            
-            String secondLine = br.readLine();
-            boolean hasTasks = false;
-            
-            // Handle backward compatibility: check if second line is nextId or a task
-            if (secondLine != null && !secondLine.startsWith("nextId:")) {
-                // Old format - second line is a task
-                String[] parts = secondLine.split("\\|");
-                if (parts.length >= 4) {
-                    sb.append(String.format("%-10s | %-12s | %-12s | %s\n", 
-                        parts[0], parts[1], parts[2], parts[3]));
-                    hasTasks = true;
+    // Writes the task table for a VIEW or SEARCH query, from the ViewCache unless the user's tasks changed
+    // since it was rendered. A miss is rendered outside the lock and cached if it isn't too large.
+    // Returns false if the user doesn't exist.
+    static boolean writeView(String username, TaskQuery query, PrintWriter out) {
+        String key = query.cacheKey();
+        List<Task> tasks = new ArrayList<>();
+        String view;
+        long version;
+        int total = 0;
+        UserTasks data = lockForRead(username);
+        if (data == null) return false;
+        try {
+            version = data.version;
+            view = ViewCache.getTable(data, key, version);
+            if (view == null) total = findTasks(data, query, tasks);
+        } finally {
+            UserLockRegistry.lockFor(username).readLock().unlock();
+        }
+
+        if (view == null) {
+            if (!ViewCache.accepts(tasks.size())) {
+                writeTasks(tasks, total, query, out);
+                return true;
+            }
+            StringWriter text = new StringWriter();
+            writeTasks(tasks, total, query, new PrintWriter(text));
+            view = text.toString();
+            ViewCache.putTable(data, key, version, view);
+        }
+        out.print(view);
+        return true;
+    }
+
+    // Collects the tasks matching a VIEW or SEARCH query, for the requested page only.
+    // Returns the total number of matching tasks.
+    // The most selective index drives: description words, then the due-date range, then the category.
+    // Rows are in due-date order for a date range, otherwise in task ID order.
+    // When the index alone answers the query its size is the total, and the walk stops after the page.
+    // Caller holds the user's read or write lock
+    private static int findTasks(UserTasks data, TaskQuery query, List<Task> page) {
+        PageCollector result = new PageCollector(query, page);
+
+        if (!query.words.isEmpty()) {
+            List<Integer> ids = data.withWords(query.words);
+            if (query.category == null && !query.hasDateRange()) {
+                for (Integer id : ids) {
+                    if (!result.offer(data.tasks.get(id))) break;
                 }
+                return ids.size();
             }
+            List<Task> matches = new ArrayList<>();
+            for (Integer id : ids) {
+                matches.add(data.tasks.get(id));
+            }
+            if (query.hasDateRange()) matches.sort(BY_DUE_DATE);
+            matches.forEach(result::offer);
+        } else if (query.hasDateRange()) {
+            NavigableMap<Integer, Set<Integer>> range = data.byDate;
+            if (query.from != null) range = range.tailMap(query.from, true);
+            if (query.to != null) range = range.headMap(query.to, true);
+            if (query.category == null) {
+                // Every task in range matches: count whole days, visit tasks only up to the page
+                int total = 0;
+                for (Set<Integer> ids : range.values()) {
+                    if (page.size() < query.limit()) {
+                        for (Integer id : ids) {
+                            if (!result.offer(data.tasks.get(id))) break;
+                        }
+                    }
+                    total += ids.size();
+                }
+                return total;
+            }
+            for (Set<Integer> ids : range.values()) {
+                for (Integer id : ids) {
+                    result.offer(data.tasks.get(id));
+                }
+            }
+        } else if (query.category != null) {
+            Set<Integer> ids = data.byCategory.get(query.category.ordinal());
+            for (Integer id : ids) {
+                if (!result.offer(data.tasks.get(id))) break;
+            }
+            return ids.size();
+        } else {
+            for (Task task : data.tasks.values()) {
+                if (!result.offer(task)) break;
+            }
+            return data.tasks.size();
+        }
+        return result.matched;
+    }
+
+    // Filters candidate tasks (already in result order) and keeps the requested page
+    private static final class PageCollector {
+        private final TaskQuery query;
+        private final List<Task> page;
+        private final int offset;
+        private final int limit;
+        int matched = 0;
+
+        PageCollector(TaskQuery query, List<Task> page) {
+            this.query = query;
+            this.page = page;
+            this.offset = query.offset();
+            this.limit = query.limit();
+        }
 
-            // Read remaining task lines
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split("\\|");
-                if (parts.length >= 4) {
-                    sb.append(String.format("%-10s | %-12s | %-12s | %s\n", 
-                        parts[0], parts[1], parts[2], parts[3]));
-                    hasTasks = true;
+        // Returns false once the page is full
+        boolean offer(Task task) {
+            if (query.matches(task)) {
+                if (matched >= offset && page.size() < limit) page.add(task);
+                matched++;
+            }
+            return page.size() < limit;
+        }
+    }
+
+    //Reminders
+    // Writes the REMINDERS block for tasks due within the next few days, if there are any.
+    // Cached like a task table, and only for the day it was rendered on.
+    static void writeReminders(String username, PrintWriter out) {
+        int today = (int) LocalDate.now().toEpochDay();
+        List<Task> due = new ArrayList<>();
+        String view;
+        long version;
+        UserTasks data = lockForRead(username);
+        if (data == null) return;
+        try {
+            version = data.version;
+            view = ViewCache.getReminders(data, today, version);
+            if (view == null) {
+                // Only tasks in range are visited, through the due-date index
+                for (Set<Integer> ids : data.byDate.headMap(today + REMINDER_DAYS, false).values()) {
+                    for (Integer id : ids) {
+                        due.add(data.tasks.get(id));
+                    }
                 }
             }
-            
-            if (!hasTasks) sb.append("(You have no tasks yet)\n");
-            
-        } catch (IOException e) {
-            return "Error reading task file.";
+        } finally {
+            UserLockRegistry.lockFor(username).readLock().unlock();
+        }
+
+        if (view == null) {
+            view = formatReminders(due, today);
+            ViewCache.putReminders(data, today, version, view);
+        }
+        out.print(view);
+    }
+
+    // Starts pushing the user's reminders to a session (REMINDERS ON); the user is logged in, so resident
+    static void subscribeReminders(String username, Consumer<String> pusher) {
+        ReentrantReadWriteLock.WriteLock lock = UserLockRegistry.writeLock(username);
+        try {
+            Reminders.subscribe(username, pusher, RESIDENT.get(username));
+        } finally {
+            lock.unlock();
+            releaseLock(username);
+        }
+    }
+
+    // Stops pushing to a session, at REMINDERS OFF or before its user is closed
+    static void unsubscribeReminders(String username, Consumer<String> pusher) {
+        ReentrantReadWriteLock.WriteLock lock = UserLockRegistry.writeLock(username);
+        try {
+            Reminders.unsubscribe(username, pusher, RESIDENT.get(username));
+        } finally {
+            lock.unlock();
+            releaseLock(username);
+        }
+    }
+
+    // The REMINDER push for a user at the start of day today: their tasks due on overdueDays are now
+    // overdue and those due today are due. Null if nothing is left to remind of, or the user isn't resident.
+    static String reminderPush(String username, List<Integer> overdueDays, int today) {
+        List<String> lines = new ArrayList<>();
+        ReentrantReadWriteLock.ReadLock lock = UserLockRegistry.readLock(username);
+        try {
+            UserTasks data = RESIDENT.get(username);
+            if (data == null) return null;
+            for (int day : overdueDays) {
+                for (Integer id : data.byDate.getOrDefault(day, Set.of())) {
+                    Task task = data.tasks.get(id);
+                    lines.add("OVERDUE: " + task.description + " (ID: " + task.id + ", due " + LocalDate.ofEpochDay(day) + ")");
+                }
+            }
+            for (Integer id : data.byDate.getOrDefault(today, Set.of())) {
+                Task task = data.tasks.get(id);
+                lines.add("DUE TODAY: " + task.description + " (ID: " + task.id + ")");
+            }
+        } finally {
+            lock.unlock();
+            releaseLock(username);
+        }
+        return Reminders.frame(lines);
+    }
+
+    private static String formatReminders(List<Task> due, int today) {
+        if (due.isEmpty()) return "";
+
+        StringBuilder sb = new StringBuilder("\nREMINDERS:\n");
+        for (Task task : due) {
+            if (task.epochDay < today)
+                sb.append("- OVERDUE: ");
+            else if (task.epochDay == today)
+                sb.append("- DUE TODAY: ");
+            else
+                sb.append("- DUE SOON: ");
+            sb.append(task.description).append('\n');
         }
-        sb.append("----------------------------------------------------------------------------------\n");
         return sb.toString();
     }
-    
-    // Adds a new task to the user's file
+
+    // Writes a task table row by row, so large tables are never built up in memory.
+    // total and query add a page line for paged views; query may be null.
+    static void writeTasks(List<Task> tasks, int total, TaskQuery query, PrintWriter out) {
+        out.print(TABLE_HEADER);
+
+        TaskRowFormatter formatter = TaskRowFormatter.forThread();
+        for (Task task : tasks) {
+            formatter.write(task, out);
+        }
+        if (tasks.isEmpty()) {
+            boolean filtered = query != null && (query.category != null || query.hasDateRange() || !query.words.isEmpty());
+            out.print(filtered || total > 0 ? "(No matching tasks)\n" : "(You have no tasks yet)\n");
+        }
+        if (query != null && query.page > 0) {
+            long pages = Math.max(1, (total + (long) query.size - 1) / query.size);
+            out.print("(Page " + query.page + " of " + pages + ", " + total + " tasks)\n");
+        }
+
+        out.print(SEPARATOR);
+    }
+
+    // The user's whole task table, as an unfiltered VIEW shows it, from the ViewCache if current.
+    // Caller holds the user's read or write lock
+    private static String allTasksTable(UserTasks data) {
+        String view = ViewCache.getTable(data, ALL_TASKS, data.version);
+        if (view == null) {
+            view = formatTasks(data);
+            ViewCache.putTable(data, ALL_TASKS, data.version, view);
+        }
+        return view;
+    }
+
+    private static String formatTasks(UserTasks data) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(TABLE_HEADER);
+
+        TaskRowFormatter formatter = TaskRowFormatter.forThread();
+        for (Task task : data.tasks.values()) {
+            formatter.append(task, sb);
+        }
+        if (data.tasks.isEmpty()) sb.append("(You have no tasks yet)\n");
+
+        sb.append(SEPARATOR);
+        return sb.toString();
+    }
+
+    // Adds a new task to the user's resident tasks
     // username - User adding the task
     // category - Task category (e.g., Work, Personal)
     // date Due - date in YYYY-MM-DD format
     // description - Task description
-    public static synchronized String addTask(String username, String category, String date, String description) {
-        File file = new File(DATA_DIR + username + ".txt");
-        
-        if (!file.exists()) {
-            return "Error: User file not found.";
-        }
-        
-        int nextId = 1;
-        List<String> fileLines = new ArrayList<>();
-        
-        // Read existing file content
-        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-            String password = br.readLine();
-            if (password == null) return "Error: Invalid user file.";
-            fileLines.add(password);
-            
-            String secondLine = br.readLine();
-            if (secondLine != null && secondLine.startsWith("nextId:")) {
-                // New format with nextId tracking
-                nextId = Integer.parseInt(secondLine.split(":")[1]);
-            } else {
-                // Old format - calculate next ID from existing tasks
-                if (secondLine != null) {
-                    fileLines.add(secondLine);
-                    String[] parts = secondLine.split("\\|");
-                    if (parts.length > 0) {
-                        try {
-                            int taskId = Integer.parseInt(parts[0]);
-                            nextId = Math.max(nextId, taskId + 1);
-                        } catch (NumberFormatException e) {
-                            // Invalid ID, keep default nextId
-                        }
+    public static String addTask(String username, String category, String date, String description) {
+        String response;
+        boolean saved;
+        ReentrantReadWriteLock.WriteLock lock = UserLockRegistry.writeLock(username);
+        try {
+            UserTasks data = residentTasks(username);
+            if (data == null) return "Error: User file not found.";
+
+            Task task = Task.of(data.nextId++, category, date, description);
+            data.put(task);
+            Reminders.taskAdded(username, task);
+            queue(username, data, TaskJournal.addRecord(task));
+            response = ">> SUCCESS: Task Added (ID: " + task.id + ")\n" + allTasksTable(data);
+            saved = saveLocked(username, data);
+        } finally {
+            lock.unlock();
+            releaseLock(username);
+        }
+        return awaitSaved(saved) ? response : response + NOT_SAVED;
+    }
+
+    // Deletes a task by ID from the user's resident tasks
+    public static String deleteTask(String username, String taskId) {
+        String response;
+        boolean saved;
+        ReentrantReadWriteLock.WriteLock lock = UserLockRegistry.writeLock(username);
+        try {
+            UserTasks data = residentTasks(username);
+            if (data == null) return "Error deleting task.";
+
+            int id = -1;
+            try {
+                id = Integer.parseInt(taskId);
+            } catch (NumberFormatException e) {
+                // Not a task ID, nothing to delete
+            }
+            Task removed = data.remove(id);
+            if (removed == null) return ">> ERROR: Task ID not found.\n" + allTasksTable(data);
+            Reminders.taskRemoved(username, removed, data);
+
+            queue(username, data, TaskJournal.deleteRecord(id));
+            data.tombstones++;
+            response = ">> SUCCESS: Task Deleted.\n" + allTasksTable(data);
+            saved = saveLocked(username, data);
+        } finally {
+            lock.unlock();
+            releaseLock(username);
+        }
+        return awaitSaved(saved) ? response : response + NOT_SAVED;
+    }
+
+    // Applies many ADD / DELETE commands (already validated, split as ADD <category> <date> <description>
+    // and DELETE <id>) under one write lock and writes them with a single journal append.
+    // Returns {tasks added, tasks deleted, DELETEs whose ID was not found, 1 if not saved to disk yet}.
+    public static int[] applyBatch(String username, List<String[]> commands) {
+        int[] result = new int[4];
+        boolean saved;
+        ReentrantReadWriteLock.WriteLock lock = UserLockRegistry.writeLock(username);
+        try {
+            UserTasks data = residentTasks(username);
+            if (data == null) return result;
+
+            for (String[] parts : commands) {
+                if (parts[0].equalsIgnoreCase("ADD")) {
+                    Task task = Task.of(data.nextId++, parts[1], parts[2], parts[3]);
+                    data.put(task);
+                    Reminders.taskAdded(username, task);
+                    queue(username, data, TaskJournal.addRecord(task));
+                    result[0]++;
+                } else {
+                    int id = -1;
+                    try {
+                        id = Integer.parseInt(parts[1]);
+                    } catch (NumberFormatException e) {
+                        // Not a task ID, nothing to delete
+                    }
+                    Task removed = data.remove(id);
+                    if (removed != null) {
+                        Reminders.taskRemoved(username, removed, data);
+                        queue(username, data, TaskJournal.deleteRecord(id));
+                        data.tombstones++;
+                        result[1]++;
+                    } else {
+                        result[2]++;
                     }
                 }
             }
-            
-            // Read all remaining tasks
-            String line;
-            while ((line = br.readLine()) != null) {
-                fileLines.add(line);
-                
-                // If old format, continue finding max ID
-                if (secondLine == null || !secondLine.startsWith("nextId:")) {
-                    String[] parts = line.split("\\|");
-                    if (parts.length > 0) {
-                        try {
-                            int taskId = Integer.parseInt(parts[0]);
-                            nextId = Math.max(nextId, taskId + 1);
-                        } catch (NumberFormatException e) {
-                            // Invalid ID, skip
-                        }
+            if (result[0] + result[1] > 0) ViewCache.invalidate(data);
+            // Written at once even without fsync: a batch is one append however large
+            saved = DURABILITY == DurabilityPolicy.GROUP || flush(username, data, DURABILITY.syncs());
+        } finally {
+            lock.unlock();
+            releaseLock(username);
+        }
+        if (!awaitSaved(saved)) result[3] = 1;
+        return result;
+    }
+
+    // Called with the user's write lock held after a change queued its journal records.
+    // With the per-op policy they are written and fsynced right away.
+    // Returns false if that failed; the records stay pending.
+    private static boolean saveLocked(String username, UserTasks data) {
+        return DURABILITY != DurabilityPolicy.PER_OP || flush(username, data, true);
+    }
+
+    // Queues a journal record for the user's file, for the commit log under the group policy
+    // and for replicas. Caller holds the user's write lock
+    private static void queue(String username, UserTasks data, String record) {
+        data.pending.add(record);
+        if (COMMIT_LOG != null) data.unlogged.add(record);
+        ReplicationLog.taskRecord(username, record);
+    }
+
+    // Called after the user's lock is released: with the group policy, waits for the
+    // group commit that covers the change. Returns whether the change is saved.
+    private static boolean awaitSaved(boolean saved) {
+        return DURABILITY == DurabilityPolicy.GROUP ? COMMITTER.awaitCommit() : saved;
+    }
+
+    // Writes every user with pending changes back to disk
+    public static void flushAll() {
+        // Only per-op records left behind by a failed write still need their fsync
+        flushResident(DURABILITY == DurabilityPolicy.PER_OP);
+    }
+
+    // Returns false if some user's records couldn't be written
+    private static boolean flushResident(boolean sync) {
+        boolean ok = true;
+        for (Map.Entry<String, UserTasks> entry : RESIDENT.entrySet()) {
+            String username = entry.getKey();
+            ReentrantReadWriteLock.ReadLock lock = UserLockRegistry.readLock(username);
+            try {
+                ok &= flush(username, entry.getValue(), sync);
+            } finally {
+                lock.unlock();
+                releaseLock(username);
+            }
+        }
+        return ok;
+    }
+
+    // Rewrites the files of resident users whose journals have piled up enough dead records
+    public static void compactAll() {
+        for (Map.Entry<String, UserTasks> entry : RESIDENT.entrySet()) {
+            String username = entry.getKey();
+            UserTasks data = entry.getValue();
+            if (data.tombstones < COMPACT_TOMBSTONES) continue;
+
+            ReentrantReadWriteLock.ReadLock lock = UserLockRegistry.readLock(username);
+            try {
+                synchronized (data) {
+                    long written = STORE.compact(username, data, BINARY_SNAPSHOTS);
+                    ServerMetrics.recordBytesWritten(written);
+                    UserManifest.recordTasks(username, written, data.tasks.size(), data.nextId);
+                    data.pending.clear();
+                    data.tombstones = 0;
+                }
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not compact task file for " + username, e);
+            } finally {
+                lock.unlock();
+                releaseLock(username);
+            }
+        }
+    }
+
+    //Replication
+    // Users with a task file, for a replica's full copy
+    static List<String> storedUsers() {
+        return STORE.usernames();
+    }
+
+    // A user's tasks as they are now, for a replica's full copy: a copy of the resident ones,
+    // or read from disk without indexes. Null if the user has no task file.
+    static UserTasks replicaCopy(String username) {
+        ReentrantReadWriteLock.ReadLock lock = UserLockRegistry.readLock(username);
+        try {
+            UserTasks data = RESIDENT.get(username);
+            if (data == null) return STORE.loadUnindexed(username);
+            UserTasks copy = new UserTasks(false);
+            copy.nextId = data.nextId;
+            for (Task task : data.tasks.values()) {
+                copy.put(task);
+            }
+            return copy;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not read task file for " + username, e);
+            return null;
+        } finally {
+            lock.unlock();
+            releaseLock(username);
+        }
+    }
+
+    // Replica: applies journal records from the primary. They are appended to the user's file and
+    // fsynced at once, not queued like a client's change: a replica takes no changes of its own, so
+    // nothing would ever take them to its commit log. If the user is logged in here, the resident
+    // tasks follow. Throws IOException if the records couldn't be written; they are then sent again.
+    static void applyReplicated(String username, List<String> records) throws IOException {
+        ReentrantReadWriteLock.WriteLock lock = UserLockRegistry.writeLock(username);
+        try {
+            if (STORE.size(username) == 0) {
+                logger.warning("Replicated records for " + username + ", who has no task file here, were dropped");
+                return;
+            }
+            long written = STORE.append(username, records, true);
+            ServerMetrics.recordBytesWritten(written);
+            ServerMetrics.recordSync();
+
+            UserTasks data = RESIDENT.get(username);
+            if (data == null) {
+                // Task figures are known again once the user is loaded
+                UserManifest.recordAppend(username, written, -1, -1);
+                return;
+            }
+
+            for (String record : records) {
+                if (record.startsWith("-")) {
+                    try {
+                        Task removed = data.remove(Integer.parseInt(record.substring(1).trim()));
+                        if (removed != null) Reminders.taskRemoved(username, removed, data);
+                    } catch (NumberFormatException e) {
+                        continue;
                     }
+                    data.tombstones++;
+                } else {
+                    Task task = Task.parse(record.substring(1));
+                    if (task == null) continue;
+                    if (data.put(task) != null) data.tombstones++;
+                    Reminders.taskAdded(username, task);
+                    data.nextId = Math.max(data.nextId, task.id + 1);
                 }
             }
+            UserManifest.recordAppend(username, written, data.tasks.size(), data.nextId);
+            ViewCache.invalidate(data);
+        } finally {
+            lock.unlock();
+            releaseLock(username);
+        }
+    }
+
+    // Replica: replaces a user's tasks with the primary's, from a full copy
+    static void replaceReplicated(String username, UserTasks copy) throws IOException {
+        ReentrantReadWriteLock.WriteLock lock = UserLockRegistry.writeLock(username);
+        try {
+            STORE.create(username);
+            copy.password = CredentialStore.PASSWORD_PLACEHOLDER;
+            long written = STORE.compact(username, copy, BINARY_SNAPSHOTS);
+            ServerMetrics.recordBytesWritten(written);
+            UserManifest.recordTasks(username, written, copy.tasks.size(), copy.nextId);
+
+            UserTasks resident = RESIDENT.remove(username);
+            if (resident != null) {
+                ViewCache.invalidate(resident);
+                // Logged in here: reload the new file, with its indexes
+                UserTasks data = residentTasks(username);
+                if (data != null) data.sessions = resident.sessions;
+            }
+        } finally {
+            lock.unlock();
+            releaseLock(username);
+        }
+    }
+
+    // Replays what a previous run left in the commit log, then opens it if the group policy is on
+    private static CommitLog openCommitLog() {
+        File file = CommitLog.FILE;
+        try {
+            int replayed = CommitLog.recover(file, STORE);
+            if (replayed > 0) logger.info("Recovered " + replayed + " journal records from " + file);
+            return DURABILITY == DurabilityPolicy.GROUP ? new CommitLog(file) : null;
         } catch (IOException e) {
-            return "Error reading task file.";
-        }
-        
-        // Write everything back with new task and updated nextId
-        try (PrintWriter pw = new PrintWriter(new FileWriter(file))) {
-            pw.println(fileLines.get(0)); // Write password
-            pw.println("nextId:" + (nextId + 1)); // Write updated nextId
-            
-            // Write all existing tasks (skip old nextId line if present)
-            for (int i = 1; i < fileLines.size(); i++) {
-                if (!fileLines.get(i).startsWith("nextId:")) {
-                    pw.println(fileLines.get(i));
+            throw new UncheckedIOException("Could not recover or open " + file, e);
+        }
+    }
+
+    // One group commit: moves every resident user's new records into the commit log with a single
+    // fsync, then checkpoints once the log is large enough. Returns false if the log write failed.
+    private static boolean groupCommit() {
+        List<String> lines = new ArrayList<>();
+        Map<UserTasks, List<String>> taken = new HashMap<>();
+        for (Map.Entry<String, UserTasks> entry : RESIDENT.entrySet()) {
+            UserTasks data = entry.getValue();
+            ReentrantReadWriteLock.ReadLock lock = UserLockRegistry.readLock(entry.getKey());
+            try {
+                // Writers add to unlogged under the write lock, so the read lock keeps them out
+                if (data.unlogged.isEmpty()) continue;
+                for (String record : data.unlogged) {
+                    lines.add(CommitLog.line(entry.getKey(), record));
                 }
+                taken.put(data, new ArrayList<>(data.unlogged));
+                data.unlogged.clear();
+            } finally {
+                lock.unlock();
+                releaseLock(entry.getKey());
             }
-            
-            // Add new task with assigned ID
-            pw.println(nextId + "|" + category + "|" + date + "|" + description);
-            
-            // Force flush to ensure data is written before reading
-            pw.flush();
+        }
+        if (lines.isEmpty()) return true;
+
+        try {
+            ServerMetrics.recordBytesWritten(COMMIT_LOG.append(lines));
+            ServerMetrics.recordSync();
         } catch (IOException e) {
-            return "Error saving task.";
-        }
-        
-        // Now safely read the updated file
-        return ">> SUCCESS: Task Added (ID: " + nextId + ")\n" + getFormattedTasks(username);
-    }
-    
-    // Deletes a task by ID by rewriting the file without that task
-    public static synchronized String deleteTask(String username, String taskId) {
-        File inputFile = new File(DATA_DIR + username + ".txt");
-        File tempFile = new File(DATA_DIR + username + "_temp.txt");
-        boolean deleted = false;
-
-        // Read original file and write to temp file, skipping the deleted task
-        try (BufferedReader reader = new BufferedReader(new FileReader(inputFile));
-             PrintWriter writer = new PrintWriter(new FileWriter(tempFile))) {
-
-            // Preserve password (line 1)
-            String passwordLine = reader.readLine();
-            if (passwordLine != null) writer.println(passwordLine);
-
-            // Handle line 2 (nextId or task for backward compatibility)
-            String nextIdLine = reader.readLine();
-            if (nextIdLine != null) {
-                if (nextIdLine.startsWith("nextId:")) {
-                    // New format - preserve nextId line
-                    writer.println(nextIdLine);
-                } else {
-                    // Old format - check if this task should be deleted
-                    String[] parts = nextIdLine.split("\\|");
-                    if (parts.length > 0 && parts[0].equals(taskId)) {
-                        deleted = true; // Skip this line
-                    } else {
-                        writer.println(nextIdLine); // Keep this task
-                    }
+            logger.log(Level.WARNING, "Could not write the commit log", e);
+            // Put the records back in front of anything queued since, for the next commit
+            for (Map.Entry<String, UserTasks> entry : RESIDENT.entrySet()) {
+                List<String> records = taken.get(entry.getValue());
+                if (records == null) continue;
+                ReentrantReadWriteLock.ReadLock lock = UserLockRegistry.readLock(entry.getKey());
+                try {
+                    entry.getValue().unlogged.addAll(0, records);
+                } finally {
+                    lock.unlock();
+                    releaseLock(entry.getKey());
                 }
             }
+            return false;
+        }
 
-            // Process remaining tasks
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split("\\|");
-                if (parts.length > 0 && parts[0].equals(taskId)) {
-                    deleted = true; // Skip this task
+        try {
+            if (COMMIT_LOG.size() >= CHECKPOINT_BYTES) checkpoint();
+        } catch (IOException e) {
+            // The log keeps everything; the next commit tries again
+            logger.log(Level.WARNING, "Commit log checkpoint failed", e);
+        }
+        return true;
+    }
+
+    // Writes and fsyncs every user file the commit log covers, then empties the log.
+    // Runs on the committer thread, so no group commit adds to the log meanwhile.
+    private static void checkpoint() throws IOException {
+        flushResident(false);
+        for (String username : UNSYNCED) {
+            ReentrantReadWriteLock.ReadLock lock = UserLockRegistry.readLock(username);
+            try {
+                UserTasks data = RESIDENT.get(username);
+                if (data == null) {
+                    STORE.sync(username);
                 } else {
-                    writer.println(line); // Keep this task
+                    // Not while a flush is still appending to the file
+                    synchronized (data) {
+                        STORE.sync(username);
+                    }
                 }
+                ServerMetrics.recordSync();
+                UNSYNCED.remove(username);
+            } finally {
+                lock.unlock();
+                releaseLock(username);
+            }
+        }
+        COMMIT_LOG.truncate();
+    }
+
+    // Acquires the user's read lock with their tasks resident, loading them from disk on first access.
+    // Returns null without holding the lock if the user doesn't exist.
+    private static UserTasks lockForRead(String username) {
+        while (true) {
+            ReentrantReadWriteLock.ReadLock read = UserLockRegistry.readLock(username);
+            UserTasks data = RESIDENT.get(username);
+            if (data != null) return data;
+            read.unlock();
+
+            ReentrantReadWriteLock.WriteLock write = UserLockRegistry.writeLock(username);
+            boolean exists;
+            try {
+                exists = residentTasks(username) != null;
+            } finally {
+                write.unlock();
+            }
+            if (!exists) {
+                releaseLock(username);
+                return null;
             }
-        } catch (IOException e) {
-            return "Error deleting task.";
         }
+    }
+
+    // Called after the user's lock is released: drops it once nothing of theirs is resident,
+    // so users who left (or never existed) don't keep a lock each
+    private static void releaseLock(String username) {
+        if (!RESIDENT.containsKey(username)) UserLockRegistry.release(username);
+    }
 
-        // Replace original file with temp file
-        if (!inputFile.delete()) {
-            return "Error: Could not delete original file.";
+    // Caller must hold the user's write lock
+    private static UserTasks residentTasks(String username) {
+        UserTasks data = RESIDENT.get(username);
+        if (data == null) {
+            data = readUserFile(username);
+            if (data != null) RESIDENT.put(username, data);
         }
-        if (!tempFile.renameTo(inputFile)) {
-            return "Error: Could not rename temp file.";
+        return data;
+    }
+
+    // Replays a user file into memory, returning null if it doesn't exist
+    private static UserTasks readUserFile(String username) {
+        try {
+            UserTasks data = STORE.load(username);
+            if (data == null) return null;
+            long size = STORE.size(username);
+            ServerMetrics.recordBytesRead(size);
+
+            // Task IDs only grow, so a lower one than the manifest saw means records went missing
+            int recordedNextId = UserManifest.recordedNextId(username);
+            if (data.nextId < recordedNextId) {
+                logger.warning("Task file for " + username + " ends before task ID " + (recordedNextId - 1)
+                        + ", which was written before; its last changes may be lost");
+            }
+            UserManifest.recordTasks(username, size, data.tasks.size(), data.nextId);
+            return data;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not read task file for " + username, e);
+            return null;
         }
+    }
 
-        // Return appropriate message
-        if (deleted) {
-            return ">> SUCCESS: Task Deleted.\n" + getFormattedTasks(username);
-        } else {
-            return ">> ERROR: Task ID not found.\n" + getFormattedTasks(username);
+    // Appends the user's pending journal records, fsynced if sync is set.
+    // Returns false if they couldn't be written.
+    // Caller must hold the user's read or write lock
+    private static boolean flush(String username, UserTasks data, boolean sync) {
+        synchronized (data) {
+            if (data.pending.isEmpty()) return true;
+
+            try {
+                // Marked before writing, so a checkpoint never misses the file
+                if (!sync && COMMIT_LOG != null) UNSYNCED.add(username);
+                long written = STORE.append(username, data.pending, sync);
+                ServerMetrics.recordBytesWritten(written);
+                UserManifest.recordAppend(username, written, data.tasks.size(), data.nextId);
+                if (sync) ServerMetrics.recordSync();
+                data.pending.clear();
+                return true;
+            } catch (IOException e) {
+                // Records stay pending; replaying a record twice is harmless
+                logger.log(Level.WARNING, "Could not save task file for " + username, e);
+                return false;
+            }
         }
     }
-}
\ No newline at end of file
+}
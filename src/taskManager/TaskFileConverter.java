@@ -0,0 +1,48 @@
+package taskManager;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Converts user files between the text layout and binary snapshots, several users
+ * at a time (taskManager.adminThreads). Run it while the server is stopped.
+ *
+ * Usage: TaskFileConverter <to-binary|to-text> <username>... | --all
+ */
+public class TaskFileConverter {
+
+    public static void main(String[] args) {
+        if (args.length < 2 || !(args[0].equals("to-binary") || args[0].equals("to-text"))) {
+            throw new IllegalArgumentException("Parameters: <to-binary|to-text> <Username>... | --all");
+        }
+        boolean toBinary = args[0].equals("to-binary");
+
+        TaskStore store = TaskStore.configured();
+        List<String> usernames = new ArrayList<>();
+        if (args[1].equals("--all")) {
+            usernames.addAll(store.usernames());
+        } else {
+            for (int i = 1; i < args.length; i++) usernames.add(args[i]);
+        }
+
+        // Several users at a time, like TaskAdmin
+        AtomicInteger converted = new AtomicInteger();
+        TaskAdmin.inParallel(() -> usernames.parallelStream().forEach(username -> {
+            try {
+                UserTasks data = store.loadUnindexed(username);
+                if (data == null) {
+                    System.out.println(username + ": no such user");
+                    return;
+                }
+                long bytes = store.compact(username, data, toBinary);
+                System.out.println(username + ": " + data.tasks.size() + " tasks, " + bytes + " bytes written");
+                converted.incrementAndGet();
+            } catch (IOException e) {
+                System.out.println(username + ": " + e.getMessage());
+            }
+        }));
+        System.out.println("Converted " + converted + " of " + usernames.size() + " users.");
+    }
+}
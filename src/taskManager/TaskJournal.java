@@ -0,0 +1,171 @@
+package taskManager;
+
+import java.io.*;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Append-only on-disk layout for a user's tasks.
+ * File format:
+ * Line 1: password (CredentialStore.PASSWORD_PLACEHOLDER once moved to the credential index)
+ * Line 2: nextId:N (next task ID at the time of the last compaction)
+ * Then snapshot lines, written by compaction: taskId|category|date|description
+ * Then journal records appended after each flush:
+ *   +taskId|category|date|description   (task added)
+ *   -taskId                             (task deleted)
+ *
+ * A compacted file is exactly the original password / nextId / task layout,
+ * and files in that layout (with or without the nextId line) replay unchanged.
+ *
+ * With a binary snapshot (see BinaryTaskFile) the tasks live in data/<user>.tdb
+ * and the text file holds only line 1, the nextId line and later journal records.
+ * Loading reads the snapshot first and then replays the text file over it.
+ *
+ * Lines that don't parse (bad ID, category or date) are kept aside and written back
+ * as they are by compaction, after the tasks.
+ */
+public class TaskJournal {
+
+    private static final Logger logger = Logger.getLogger("practical");
+
+    /**
+     * Loads a user's binary snapshot (if any) and replays the text file over it.
+     * Returns null if the text file doesn't exist or is empty.
+     */
+    public static UserTasks load(File file) throws IOException {
+        return load(file, true);
+    }
+
+    /**
+     * Same, optionally without building the tasks' secondary indexes (see UserTasks)
+     */
+    static UserTasks load(File file, boolean indexed) throws IOException {
+        if (!file.exists()) return null;
+
+        UserTasks data = new UserTasks(indexed);
+        File snapshot = snapshotFile(file);
+        if (snapshot.exists()) BinaryTaskFile.open(snapshot).readInto(data);
+        return replay(file, data);
+    }
+
+    // The binary snapshot that belongs to a user's text file
+    public static File snapshotFile(File file) {
+        String name = file.getName();
+        return new File(file.getParentFile(), name.substring(0, name.length() - ".txt".length()) + BinaryTaskFile.EXTENSION);
+    }
+
+    /**
+     * Replays a user's text file on top of data, returning null if the file doesn't exist or is empty
+     */
+    public static UserTasks replay(File file, UserTasks data) throws IOException {
+        if (!file.exists()) return null;
+
+        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+            data.password = br.readLine();
+            if (data.password == null) return null;
+
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.startsWith("nextId:")) {
+                    data.nextId = Math.max(data.nextId, Integer.parseInt(line.substring("nextId:".length()).trim()));
+                } else if (line.startsWith("-")) {
+                    // Delete record: drops the task and leaves a tombstone until compaction
+                    try {
+                        data.remove(Integer.parseInt(line.substring(1).trim()));
+                    } catch (NumberFormatException e) {
+                        data.unparsed.add(line);
+                        continue;
+                    }
+                    data.tombstones++;
+                } else {
+                    // Add record or snapshot line
+                    Task task = Task.parse(line.startsWith("+") ? line.substring(1) : line);
+                    if (task == null) {
+                        data.unparsed.add(line);
+                        continue;
+                    }
+                    if (data.put(task) != null) data.tombstones++;
+                    data.nextId = Math.max(data.nextId, task.id + 1);
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Corrupt nextId line in " + file, e);
+        }
+        if (!data.unparsed.isEmpty()) {
+            logger.warning(file + " has " + data.unparsed.size() + " lines that aren't tasks, starting with \""
+                    + data.unparsed.get(0) + "\"; they are kept as they are");
+        }
+        return data;
+    }
+
+    // Journal record for an added task
+    static String addRecord(Task task) {
+        return "+" + task.toLine();
+    }
+
+    // Journal record for a deleted task ID
+    public static String deleteRecord(int taskId) {
+        return "-" + taskId;
+    }
+
+    /**
+     * Appends journal records to the end of the file, returning the number of bytes written.
+     * With sync the records are forced to the disk before this returns.
+     */
+    public static long append(File file, List<String> records, boolean sync) throws IOException {
+        long before = file.length();
+        try (FileOutputStream stream = new FileOutputStream(file, true);
+             PrintWriter pw = new PrintWriter(new BufferedWriter(new OutputStreamWriter(stream)))) {
+            for (String record : records) {
+                pw.println(record);
+            }
+            pw.flush();
+            if (pw.checkError()) throw new IOException("Could not append to " + file);
+            if (sync) stream.getFD().sync();
+        }
+        return file.length() - before;
+    }
+
+    /**
+     * Rewrites the file as a snapshot of the current tasks with no journal records,
+     * and drops any binary snapshot.
+     * The snapshot is written to a temp file first and then atomically moved over the original.
+     */
+    public static long compact(File file, UserTasks data) throws IOException {
+        long written = rewrite(file, data, true);
+        // Replaying the full text file over a stale binary snapshot gives the same tasks,
+        // so a crash before this delete loses nothing
+        snapshotFile(file).delete();
+        return written;
+    }
+
+    /**
+     * Writes the current tasks as a binary snapshot, then cuts the text file down
+     * to line 1 and the nextId line. Returns the bytes written to both files.
+     */
+    public static long compactToBinary(File file, UserTasks data) throws IOException {
+        long written = BinaryTaskFile.write(snapshotFile(file), data.nextId, data.tasks.values());
+        // Until this rewrite lands the old text file still replays to the same tasks over the new snapshot
+        return written + rewrite(file, data, false);
+    }
+
+    private static long rewrite(File file, UserTasks data, boolean withTasks) throws IOException {
+        File tempFile = new File(file.getParentFile(), file.getName() + ".compact");
+        try (PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(tempFile)))) {
+            pw.println(data.password);
+            pw.println("nextId:" + data.nextId);
+            if (withTasks) {
+                for (Task task : data.tasks.values()) {
+                    pw.println(task.toLine());
+                }
+            }
+            for (String line : data.unparsed) {
+                pw.println(line);
+            }
+            if (pw.checkError()) throw new IOException("Could not write " + tempFile);
+        }
+        long written = tempFile.length();
+        DurableFiles.replace(tempFile, file);
+        return written;
+    }
+}
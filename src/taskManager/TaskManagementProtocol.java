@@ -2,53 +2,214 @@ package taskManager;
 
 import java.io.*;
 import java.net.Socket;
-import java.time.LocalDate;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class TaskManagementProtocol {
 
-    private static final String DATA_DIR = "data/";
+    // Most commands accepted between BATCH and END
+    private static final int MAX_BATCH_SIZE = 10_000;
 
-    static {
-        new File(DATA_DIR).mkdirs();
-    }
+    // User allowed to run STATS; none unless set, since anyone can REGISTER a well-known name
+    private static final String ADMIN_USER = System.getProperty("taskManager.admin", "").trim();
 
     static class ClientSession {
         boolean loggedIn = false;
         String username = null;
+        // Commands collected since BATCH, or null outside a batch
+        List<String[]> batch = null;
+        // Session on the cluster node that owns the user, while logged in there (see ClusterRouter)
+        ClusterRouter.RemoteSession remote = null;
+        // Hands a REMINDER push to the connection, to be written between two responses; set by the server
+        Consumer<String> pusher = null;
+        // REMINDERS ON: the pusher is subscribed to the user's reminders
+        boolean reminders = false;
+    }
+
+    // Line that ends every response, so clients can pipeline commands
+    // without guessing where one response stops and the next begins
+    public static final String END_OF_RESPONSE = ".";
+
+    // Lines sent to every client right after it connects
+    static final String GREETING = "HELLO! Welcome to Task Management Server." + System.lineSeparator()
+            + "REGISTER <username> <password> OR LOGIN <username> <password>";
+
+    // Writes the greeting as the first framed response of a connection
+    static void writeGreeting(PrintWriter out) {
+        out.println(GREETING);
+        out.println(END_OF_RESPONSE);
+    }
+
+    // Writes a REMINDER push (see Reminders), framed like a response
+    static void writePush(String frame, PrintWriter out) {
+        out.println(frame);
+        out.println(END_OF_RESPONSE);
     }
 
     public static void handleClient(Socket clientSock, Logger logger) {
         ClientSession session = new ClientSession();
+        ServerMetrics.sessionOpened();
 
         try (
-            BufferedReader reader = new BufferedReader(
-                new InputStreamReader(clientSock.getInputStream()));
-            PrintWriter writer = new PrintWriter(
-                clientSock.getOutputStream(), true)
+            BlockingConnection conn = new BlockingConnection(clientSock);
+            PrintWriter writer = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(conn.output())))
         ) {
-            writer.println("HELLO! Welcome to Task Management Server.");
-            writer.println("REGISTER <username> <password> OR LOGIN <username> <password>");
+            // Pushes arrive on the reminder thread; whoever holds writing writes them out,
+            // so they never land inside a response
+            ReentrantLock writing = new ReentrantLock();
+            Queue<String> pushes = new ConcurrentLinkedQueue<>();
+            session.pusher = frame -> {
+                pushes.add(frame);
+                deliverPushes(pushes, writing, writer);
+            };
+
+            writing.lock();
+            try {
+                writeGreeting(writer);
+                writer.flush();
+            } finally {
+                writing.unlock();
+            }
 
             String line;
-            while ((line = reader.readLine()) != null) {
-                String response;
-
-                if (session.loggedIn) {
-                    response = processTaskCommand(line, session);
-                } else {
-                    response = processCommand(line, session);
+            while ((line = conn.readLine()) != null) {
+                writing.lock();
+                try {
+                    processLine(line, session, writer);
+                    writer.flush();
+                } finally {
+                    writing.unlock();
                 }
-
-                writer.println(response);
+                deliverPushes(pushes, writing, writer);
             }
 
+        } catch (SocketTimeoutException e) {
+            // Idle, or too slow sending a command: free the thread for other clients
+            ServerMetrics.recordClientTimedOut();
+            logger.info("Closing client " + clientSock.getRemoteSocketAddress() + ": " + e.getMessage());
         } catch (IOException e) {
             logger.log(Level.WARNING, "Client communication error", e);
+        } finally {
+            endSession(session);
+            ServerMetrics.sessionClosed();
+        }
+    }
+
+    // Writes the queued pushes unless a response is being written, in which case its writer
+    // delivers them after it; re-checks after unlocking so a push queued meanwhile isn't left behind
+    private static void deliverPushes(Queue<String> pushes, ReentrantLock writing, PrintWriter out) {
+        while (!pushes.isEmpty() && writing.tryLock()) {
+            try {
+                String frame;
+                while ((frame = pushes.poll()) != null) {
+                    writePush(frame, out);
+                }
+                out.flush();
+            } finally {
+                writing.unlock();
+            }
+        }
+    }
+
+    // Handles one command line from a client and writes the response to out,
+    // followed by END_OF_RESPONSE. Lines inside a BATCH block get no response
+    // of their own; the whole block is answered once at END.
+    // The caller flushes out once the response is complete.
+    static void processLine(String line, ClientSession session, PrintWriter out) {
+        long start = System.nanoTime();
+        String response;
+        String command;
+        if (session.remote != null && firstWord(line).equalsIgnoreCase("REMINDERS")) {
+            // Pushes can't be relayed in step with the responses
+            response = "Error: REMINDERS is not available for users held by another cluster node.";
+            command = "REMINDERS";
+        } else if (session.remote != null) {
+            if (!relayLine(line, session, out)) return;
+            response = null;
+            command = firstWord(line);
+        } else if (session.batch != null) {
+            response = collectBatchLine(line, session);
+            if (response == null) return;
+            command = "BATCH";
+        } else if (session.loggedIn && !firstWord(line).equalsIgnoreCase("BATCH")
+                && !ConnectionLimits.allowCommand(session.username)) {
+            response = ConnectionLimits.RATE_LIMITED;
+            command = firstWord(line);
+        } else if (session.loggedIn) {
+            response = processTaskCommand(line, session, out);
+            // BATCH just opened: the block is answered once at END
+            if (session.batch != null) return;
+            command = firstWord(line);
+        } else {
+            response = processCommand(line, session);
+            command = firstWord(line);
+        }
+        // Streaming commands have already written their response
+        if (response != null) out.println(response);
+        out.println(END_OF_RESPONSE);
+        ServerMetrics.recordCommand(command, System.nanoTime() - start);
+    }
+
+    private static String firstWord(String line) {
+        String trimmed = line.trim();
+        int end = trimmed.indexOf(' ');
+        return end < 0 ? trimmed : trimmed.substring(0, end);
+    }
+
+    // Passes a line on to the node that owns the session's user.
+    // Returns false if that line gets no response (inside a BATCH block).
+    private static boolean relayLine(String line, ClientSession session, PrintWriter out) {
+        try {
+            boolean answered = session.remote.relay(line, out);
+            // Closed after a LOGOUT: back to local REGISTER / LOGIN
+            if (session.remote.isClosed()) session.remote = null;
+            return answered;
+        } catch (IOException e) {
+            session.remote.close();
+            session.remote = null;
+            out.println("Error: Lost connection to the server holding your tasks. Please LOGIN again.");
+            return true;
+        }
+    }
+
+    // REGISTER or LOGIN of a user held by another cluster node.
+    // A successful LOGIN keeps the connection as the session's remote.
+    private static String forwardToOwner(String msg, String username, ClientSession session) {
+        ClusterRouter.RemoteSession remote = null;
+        try {
+            remote = ClusterRouter.connect(username);
+            String response = remote.call(msg);
+            if (response.equals("LOGIN OK")) {
+                session.remote = remote;
+                remote = null;
+            }
+            return response;
+        } catch (IOException e) {
+            return "Error: The server holding this user is unavailable. Please try again later.";
+        } finally {
+            if (remote != null) remote.close();
         }
     }
 
+    // Client dropped without LOGOUT - still flush and release its tasks
+    static void endSession(ClientSession session) {
+        if (session.remote != null) session.remote.close();
+        session.remote = null;
+        stopReminders(session);
+        if (session.loggedIn) TaskDataManager.closeUser(session.username);
+        session.loggedIn = false;
+        session.username = null;
+        session.batch = null;
+    }
+
     //Auth Commands
     private static String processCommand(String msg, ClientSession session) {
         String[] parts = msg.trim().split("\\s+");
@@ -58,11 +219,17 @@ public class TaskManagementProtocol {
             case "REGISTER":
                 if (parts.length != 3)
                     return "Usage: REGISTER <username> <password>";
+                if (!ClusterRouter.isLocal(parts[1]))
+                    return forwardToOwner(msg, parts[1], session);
+                if (Replica.isReplica())
+                    return Replica.READ_ONLY;
                 return handleRegister(parts[1], parts[2]);
 
             case "LOGIN":
                 if (parts.length != 3)
                     return "Usage: LOGIN <username> <password>";
+                if (!ClusterRouter.isLocal(parts[1]))
+                    return forwardToOwner(msg, parts[1], session);
                 if (handleLogin(parts[1], parts[2], session))
                     return "LOGIN OK";
                 return "LOGIN FAILED";
@@ -73,52 +240,53 @@ public class TaskManagementProtocol {
     }
 
     private static String handleRegister(String username, String password) {
-        File userFile = new File(DATA_DIR + username + ".txt");
-        if (userFile.exists()) return "USER EXISTS";
+        if (CredentialStore.exists(username)) return "USER EXISTS";
+
+        // A task file without an index entry is a legacy user not migrated yet
+        if (TaskDataManager.userFileExists(username)) return "USER EXISTS";
 
-        try (PrintWriter pw = new PrintWriter(new FileWriter(userFile))) {
-            pw.println(password);
-            pw.println("nextId:1");
+        boolean registered = false;
+        try {
+            // Index entry first: a task file without one would be migrated at startup,
+            // its placeholder taken for the password
+            registered = CredentialStore.register(username, password);
+            if (!registered) return "USER EXISTS";
+
+            if (!TaskDataManager.createUser(username)) {
+                CredentialStore.unregister(username);
+                return "USER EXISTS";
+            }
+            ReplicationLog.userRegistered(username);
             return "REGISTER OK";
         } catch (IOException e) {
+            if (registered) CredentialStore.unregister(username);
             return "REGISTER FAILED";
         }
     }
 
     private static boolean handleLogin(String username, String password, ClientSession session) {
-        File userFile = new File(DATA_DIR + username + ".txt");
-        if (!userFile.exists()) return false;
-
-        try (BufferedReader br = new BufferedReader(new FileReader(userFile))) {
-            String stored = br.readLine();
-            if (stored != null && stored.equals(password)) {
-                session.loggedIn = true;
-                session.username = username;
-                return true;
-            }
-        } catch (IOException ignored) {}
-        return false;
+        if (!CredentialStore.verify(username, password)) return false;
+
+        session.loggedIn = true;
+        session.username = username;
+        TaskDataManager.openUser(username);
+        return true;
     }
 
     //All Task Commands
-    private static String processTaskCommand(String msg, ClientSession session) {
+    // Returns the response, or null when it has been streamed to out already
+    private static String processTaskCommand(String msg, ClientSession session, PrintWriter out) {
         String[] parts = msg.trim().split("\\s+", 4);
 
-        switch (parts[0].toUpperCase()) {
-        case "ADD":
-            if (parts.length < 4)
-                return "Usage: ADD <Category> <Date> <Description>. Available Categories: WORK, PERSONAL, SHOPPING, HEALTH, EDUCATION, FINANCE, TRAVEL, HOME";
-
-            //Category validation before adding a task
-            if (!TaskCategory.isValidCategory(parts[1]))
-                return "Error: Invalid category. Use CATEGORIES.";
+        String keyword = parts[0].toUpperCase();
+        if (Replica.isReplica() && (keyword.equals("ADD") || keyword.equals("DELETE") || keyword.equals("BATCH")))
+            return Replica.READ_ONLY;
 
-            //Date validation before adding a task
-            try {
-                LocalDate.parse(parts[2]);
-            } catch (Exception e) {
-                return "Error: Invalid date format. Use YYYY-MM-DD. (e.g 2026-01-01)";
-            }
+        switch (keyword) {
+        case "ADD":
+            String error = validateAdd(parts);
+            if (error != null)
+                return error;
 
             return TaskDataManager.addTask(
                     session.username,
@@ -128,8 +296,10 @@ public class TaskManagementProtocol {
 
 
             case "VIEW":
-                return checkUserReminders(session.username)
-                        + TaskDataManager.getFormattedTasks(session.username);
+                return streamView(msg, session, out, false);
+
+            case "SEARCH":
+                return streamView(msg, session, out, true);
 
             case "DELETE":
                 if (parts.length < 2)
@@ -139,7 +309,23 @@ public class TaskManagementProtocol {
             case "CATEGORIES":
                 return TaskCategory.getAvailableCategories();
 
+            case "BATCH":
+                session.batch = new ArrayList<>();
+                return null;
+
+            case "STATS":
+                if (ADMIN_USER.isEmpty())
+                    return "Error: STATS is disabled. Start the server with -DtaskManager.admin=<username>.";
+                if (!session.username.equals(ADMIN_USER))
+                    return "Error: STATS is only available to the admin user.";
+                return ServerMetrics.report();
+
+            case "REMINDERS":
+                return handleReminders(parts, session);
+
             case "LOGOUT":
+                stopReminders(session);
+                TaskDataManager.closeUser(session.username);
                 session.loggedIn = false;
                 session.username = null;
                 return "Logged out.";
@@ -149,45 +335,121 @@ public class TaskManagementProtocol {
         }
     }
 
-    //Reminders
-    private static String checkUserReminders(String username) {
-        StringBuilder sb = new StringBuilder();
-        LocalDate today = LocalDate.now();
-
-        File file = new File(DATA_DIR + username + ".txt");
-        if (!file.exists()) return "";
-
-        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-            br.readLine(); // password
-            String line = br.readLine();
-            if (line != null && line.startsWith("nextId:"))
-                line = br.readLine();
-
-            boolean hasAny = false;
-
-            while (line != null) {
-                String[] p = line.split("\\|");
-                if (p.length >= 4) {
-                    LocalDate date = LocalDate.parse(p[2]);
-                    if (!hasAny &&
-                        (date.isBefore(today) ||
-                         date.isEqual(today) ||
-                         date.isBefore(today.plusDays(4)))) {
-                        sb.append("\nREMINDERS:\n");
-                        hasAny = true;
-                    }
-
-                    if (date.isBefore(today))
-                        sb.append("- OVERDUE: ").append(p[3]).append("\n");
-                    else if (date.isEqual(today))
-                        sb.append("- DUE TODAY: ").append(p[3]).append("\n");
-                    else if (date.isBefore(today.plusDays(4)))
-                        sb.append("- DUE SOON: ").append(p[3]).append("\n");
+    // REMINDERS ON|OFF: start or stop REMINDER pushes to this connection when tasks fall due
+    private static String handleReminders(String[] parts, ClientSession session) {
+        if (parts.length != 2 || session.pusher == null)
+            return "Usage: REMINDERS ON|OFF";
+        switch (parts[1].toUpperCase()) {
+            case "ON":
+                if (!session.reminders) {
+                    TaskDataManager.subscribeReminders(session.username, session.pusher);
+                    session.reminders = true;
                 }
-                line = br.readLine();
+                return "Reminders on.";
+            case "OFF":
+                stopReminders(session);
+                return "Reminders off.";
+            default:
+                return "Usage: REMINDERS ON|OFF";
+        }
+    }
+
+    private static void stopReminders(ClientSession session) {
+        if (!session.reminders) return;
+        TaskDataManager.unsubscribeReminders(session.username, session.pusher);
+        session.reminders = false;
+    }
+
+    // Checks an ADD command's arguments, returning the error message or null if valid
+    private static String validateAdd(String[] parts) {
+        if (parts.length < 4)
+            return "Usage: ADD <Category> <Date> <Description>. Available Categories: WORK, PERSONAL, SHOPPING, HEALTH, EDUCATION, FINANCE, TRAVEL, HOME";
+
+        //Category validation before adding a task
+        if (!TaskCategory.isValidCategory(parts[1]))
+            return "Error: Invalid category. Use CATEGORIES.";
+
+        //Date validation before adding a task
+        try {
+            Task.epochDay(parts[2]);
+        } catch (Exception e) {
+            return "Error: Invalid date format. Use YYYY-MM-DD. (e.g 2026-01-01)";
+        }
+
+        //Description validation: it is stored as one line of the task file
+        if (!Task.isValidDescription(parts[3]))
+            return "Error: The description can't contain control characters.";
+        return null;
+    }
+
+    // Inside BATCH: queue ADD / DELETE lines until END, then apply them all at once.
+    // Returns null while collecting (no response), or the batch result at END.
+    private static String collectBatchLine(String line, ClientSession session) {
+        String[] parts = line.trim().split("\\s+", 4);
+        String command = parts[0].toUpperCase();
+
+        if (command.equals("END")) {
+            List<String[]> batch = session.batch;
+            session.batch = null;
+            // A whole batch counts as one command against the rate limit, taken here
+            if (!ConnectionLimits.allowCommand(session.username))
+                return ConnectionLimits.RATE_LIMITED + " The batch was not applied.";
+            return applyBatch(batch, session);
+        }
+        if (session.batch.size() >= MAX_BATCH_SIZE) {
+            // Keep consuming lines so the stream stays in step; report at END
+            session.batch.add(new String[] { "ERROR", "Batch too large (max " + MAX_BATCH_SIZE + " commands)" });
+            return null;
+        }
+
+        String error = null;
+        if (command.equals("ADD")) {
+            error = validateAdd(parts);
+            if (error == null) parts[1] = TaskCategory.formatCategory(parts[1]);
+        } else if (command.equals("DELETE")) {
+            if (parts.length < 2) error = "Usage: DELETE <TaskID>";
+        } else {
+            error = "Only ADD and DELETE are allowed in a BATCH";
+        }
+        session.batch.add(error == null ? parts : new String[] { "ERROR", error });
+        return null;
+    }
+
+    private static String applyBatch(List<String[]> batch, ClientSession session) {
+        List<String[]> valid = new ArrayList<>();
+        StringBuilder errors = new StringBuilder();
+        for (int i = 0; i < batch.size(); i++) {
+            String[] parts = batch.get(i);
+            if (parts[0].equals("ERROR")) {
+                errors.append("- Line ").append(i + 1).append(": ").append(parts[1]).append("\n");
+            } else {
+                valid.add(parts);
             }
-        } catch (Exception ignored) {}
+        }
+
+        int[] applied = TaskDataManager.applyBatch(session.username, valid);
+        int failed = batch.size() - applied[0] - applied[1];
+        if (applied[2] > 0) errors.append("- ").append(applied[2]).append(" DELETE(s): task ID not found\n");
+        if (applied[3] > 0) errors.append(">> WARNING: Changes not saved to disk yet, they will be retried.\n");
+        return ">> BATCH DONE: " + applied[0] + " added, " + applied[1] + " deleted, " + failed + " failed"
+                + (errors.length() > 0 ? "\n" + errors.toString().trim() : "");
+    }
+
+    // VIEW [CATEGORY <c>] [FROM <date>] [TO <date>] [PAGE n SIZE m]
+    // SEARCH takes the same options and TEXT <words...>, and shows no reminders.
+    // Written straight to the client's writer, from the ViewCache when the tasks haven't changed
+    private static String streamView(String msg, ClientSession session, PrintWriter out, boolean search) {
+        TaskQuery query;
+        try {
+            query = TaskQuery.parse(msg.trim().split("\\s+"), 1, search);
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
 
-        return sb.toString();
+        // Reminders only with the first page, not again while paging
+        if (!search && query.page <= 1) TaskDataManager.writeReminders(session.username, out);
+        if (!TaskDataManager.writeView(session.username, query, out)) return "No account found.";
+        out.println();
+        return null;
     }
 }
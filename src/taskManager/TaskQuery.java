@@ -0,0 +1,125 @@
+package taskManager;
+
+import java.time.DateTimeException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Filter and paging options of a VIEW or SEARCH command:
+ * VIEW [CATEGORY <c>] [FROM <YYYY-MM-DD>] [TO <YYYY-MM-DD>] [PAGE <n> SIZE <m>]
+ * SEARCH takes the same options plus TEXT <words...>, which must come last.
+ * Options may appear in any order; FROM and TO are inclusive.
+ */
+class TaskQuery {
+
+    static final String USAGE = "Usage: VIEW [CATEGORY <Category>] [FROM <YYYY-MM-DD>] [TO <YYYY-MM-DD>] [PAGE <n> SIZE <m>]";
+
+    static final String SEARCH_USAGE = "Usage: SEARCH [CATEGORY <Category>] [FROM <YYYY-MM-DD>] [TO <YYYY-MM-DD>] [PAGE <n> SIZE <m>] [TEXT <words...>]";
+
+    static final int DEFAULT_PAGE_SIZE = 20;
+
+    // Category to match, or null for any category
+    TaskCategory category;
+
+    // Due date range as epoch days, null for an open end
+    Integer from;
+    Integer to;
+
+    // 1-based page number, or 0 to return every matching task
+    int page = 0;
+    int size = DEFAULT_PAGE_SIZE;
+
+    // Words the description must all have (SEARCH only), as UserTasks.words splits them
+    final List<String> words = new ArrayList<>();
+
+    /**
+     * Parses the option tokens that follow the command word, with TEXT allowed if search is set.
+     * Throws IllegalArgumentException with a message for the client on bad input.
+     */
+    static TaskQuery parse(String[] tokens, int start, boolean search) {
+        String usage = search ? SEARCH_USAGE : USAGE;
+        TaskQuery query = new TaskQuery();
+        for (int i = start; i < tokens.length; i += 2) {
+            if (search && tokens[i].equalsIgnoreCase("TEXT")) {
+                for (int j = i + 1; j < tokens.length; j++) {
+                    for (String word : UserTasks.words(tokens[j])) {
+                        if (!query.words.contains(word)) query.words.add(word);
+                    }
+                }
+                if (query.words.isEmpty()) throw new IllegalArgumentException(usage);
+                break;
+            }
+            if (i + 1 >= tokens.length) throw new IllegalArgumentException(usage);
+            String value = tokens[i + 1];
+
+            switch (tokens[i].toUpperCase()) {
+                case "CATEGORY":
+                    query.category = TaskCategory.parse(value);
+                    if (query.category == null)
+                        throw new IllegalArgumentException("Error: Invalid category. Use CATEGORIES.");
+                    break;
+                case "FROM":
+                    query.from = parseDate(value);
+                    break;
+                case "TO":
+                    query.to = parseDate(value);
+                    break;
+                case "PAGE":
+                    query.page = parsePositive(value, usage);
+                    break;
+                case "SIZE":
+                    query.size = parsePositive(value, usage);
+                    if (query.page == 0) query.page = 1;
+                    break;
+                default:
+                    throw new IllegalArgumentException(usage);
+            }
+        }
+        return query;
+    }
+
+    // Key of this query's table in the ViewCache: equal for queries that return the same rows
+    String cacheKey() {
+        return (category == null ? "" : category.name()) + '|' + (from == null ? "" : from) + '|'
+                + (to == null ? "" : to) + '|' + page + '|' + (page > 0 ? size : 0) + '|' + String.join(" ", words);
+    }
+
+    boolean hasDateRange() {
+        return from != null || to != null;
+    }
+
+    // True if the task passes the category and date filters (words are matched through the index)
+    boolean matches(Task task) {
+        return (category == null || task.category == category.ordinal())
+                && (from == null || task.epochDay >= from)
+                && (to == null || task.epochDay <= to);
+    }
+
+    // Index of the first matching task to return; pages past the largest int of tasks are all empty
+    int offset() {
+        return page > 0 ? (int) Math.min((page - 1L) * size, Integer.MAX_VALUE) : 0;
+    }
+
+    // Number of matching tasks to return
+    int limit() {
+        return page > 0 ? size : Integer.MAX_VALUE;
+    }
+
+    private static int parseDate(String value) {
+        try {
+            return Task.epochDay(value);
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException("Error: Invalid date format. Use YYYY-MM-DD. (e.g 2026-01-01)");
+        }
+    }
+
+    private static int parsePositive(String value, String usage) {
+        try {
+            int n = Integer.parseInt(value);
+            if (n > 0) return n;
+        } catch (NumberFormatException e) {
+            // Fall through to the usage message
+        }
+        throw new IllegalArgumentException(usage);
+    }
+}
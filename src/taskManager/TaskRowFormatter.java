@@ -0,0 +1,133 @@
+package taskManager;
+
+import java.io.PrintWriter;
+import java.time.LocalDate;
+
+/**
+ * Formats task table rows, laid out like "%-10s | %-12s | %-12s | %s\n",
+ * into a reusable char buffer instead of going through String.format.
+ * Numbers and dates are written digit by digit, so a row allocates nothing.
+ * Not thread-safe: use the calling thread's instance from forThread().
+ */
+final class TaskRowFormatter {
+
+    private static final ThreadLocal<TaskRowFormatter> FORMATTERS = ThreadLocal.withInitial(TaskRowFormatter::new);
+
+    private static final int ID_WIDTH = 10;
+    private static final int CATEGORY_WIDTH = 12;
+    private static final int DATE_WIDTH = 12;
+
+    // A buffer grown past this by a very long description isn't kept for later rows
+    private static final int MAX_RETAINED = 8192;
+
+    private char[] buffer = new char[128];
+    private int length;
+
+    private TaskRowFormatter() {
+    }
+
+    static TaskRowFormatter forThread() {
+        return FORMATTERS.get();
+    }
+
+    // Formats a row and writes it to out
+    void write(Task task, PrintWriter out) {
+        format(task);
+        out.write(buffer, 0, length);
+    }
+
+    // Formats a row and appends it to sb
+    void append(Task task, StringBuilder sb) {
+        format(task);
+        sb.append(buffer, 0, length);
+    }
+
+    private void format(Task task) {
+        length = 0;
+        if (buffer.length > MAX_RETAINED) buffer = new char[128];
+
+        int start = length;
+        appendNumber(task.id, 1);
+        pad(start, ID_WIDTH);
+        append(" | ");
+
+        start = length;
+        append(task.categoryName());
+        pad(start, CATEGORY_WIDTH);
+        append(" | ");
+
+        start = length;
+        appendDate(task.epochDay);
+        pad(start, DATE_WIDTH);
+        append(" | ");
+
+        append(task.description);
+        append('\n');
+    }
+
+    // Writes the date as LocalDate.toString() would (YYYY-MM-DD)
+    private void appendDate(int epochDay) {
+        // Civil-from-days conversion for the proleptic Gregorian calendar, eras of 400 years
+        long z = epochDay + 719468L;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+        int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        if (year < 0 || year > 9999) {
+            // Signed and 5+ digit years are rare enough to format the slow way
+            append(LocalDate.ofEpochDay(epochDay).toString());
+            return;
+        }
+        appendNumber(year, 4);
+        append('-');
+        appendNumber(month, 2);
+        append('-');
+        appendNumber(day, 2);
+    }
+
+    // Writes a number in decimal, zero-padded to at least minDigits
+    private void appendNumber(long value, int minDigits) {
+        if (value < 0) {
+            append('-');
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) digits++;
+        digits = Math.max(digits, minDigits);
+
+        ensureCapacity(digits);
+        for (int i = length + digits - 1; i >= length; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+    }
+
+    private void pad(int start, int width) {
+        while (length - start < width) append(' ');
+    }
+
+    private void append(String s) {
+        ensureCapacity(s.length());
+        s.getChars(0, s.length(), buffer, length);
+        length += s.length();
+    }
+
+    private void append(char c) {
+        ensureCapacity(1);
+        buffer[length++] = c;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            char[] larger = new char[Math.max(buffer.length * 2, length + extra)];
+            System.arraycopy(buffer, 0, larger, 0, length);
+            buffer = larger;
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package taskManager;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * One connection to the task server, opened by TaskClient.connect.
+ * send() may be called from any thread and doesn't wait: commands go out in
+ * call order and each future completes with its command's response (the lines
+ * before the end-of-response line, joined with '\n'). If the connection fails
+ * or is closed, every command still waiting fails with an IOException.
+ * REMINDER pushes the server sends after reminders() go to their listener instead.
+ */
+public class TaskSession implements AutoCloseable {
+
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    // A command sent (or about to be) whose response hasn't arrived yet
+    private static final class Pending {
+        final String command;
+        final CompletableFuture<String> response = new CompletableFuture<>();
+
+        Pending(String command) {
+            this.command = command;
+        }
+    }
+
+    private final SocketChannel channel;
+    private final TaskClient.IoLoop loop;
+
+    // The greeting is the first response, before any command
+    private final Pending greeting = new Pending(null);
+
+    // Guarded by this: commands in the order sent, output not yet taken by the socket
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+    private final ArrayDeque<ByteBuffer> output = new ArrayDeque<>();
+    private SelectionKey key;
+    private boolean connected = false;
+    private boolean closed = false;
+
+    // Set by a LOGIN OK response, cleared by LOGOUT's
+    private volatile boolean loggedIn = false;
+
+    // Gets the REMINDER pushes, on the loop thread
+    private volatile Consumer<String> reminderListener = null;
+
+    // Loop thread only: bytes read, and the current response up to where its last line started
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private byte[] responseBytes = new byte[READ_BUFFER_SIZE];
+    private int responseLength = 0;
+    private int lineStart = 0;
+
+    TaskSession(SocketChannel channel, TaskClient.IoLoop loop) {
+        this.channel = channel;
+        this.loop = loop;
+        pending.add(greeting);
+    }
+
+    CompletableFuture<String> greeting() {
+        return greeting.response;
+    }
+
+    /**
+     * Sends one command line, completing with its response
+     */
+    public CompletableFuture<String> send(String command) {
+        checkLine(command);
+        return enqueue(command, command + "\n");
+    }
+
+    /**
+     * Logs in, completing with true on LOGIN OK
+     */
+    public CompletableFuture<Boolean> login(String username, String password) {
+        return send("LOGIN " + username + " " + password).thenApply(response -> response.equals("LOGIN OK"));
+    }
+
+    /**
+     * Registers a user, completing with the server's answer (REGISTER OK, USER EXISTS, ...)
+     */
+    public CompletableFuture<String> register(String username, String password) {
+        return send("REGISTER " + username + " " + password);
+    }
+
+    /**
+     * Sends ADD / DELETE commands as one BATCH block, completing with the single response
+     * the server gives at END. The session must be logged in (login() completed), since
+     * otherwise the server answers every line on its own.
+     */
+    public CompletableFuture<String> batch(List<String> commands) {
+        if (!loggedIn) throw new IllegalStateException("BATCH needs a logged-in session");
+        StringBuilder block = new StringBuilder("BATCH\n");
+        for (String command : commands) {
+            checkLine(command);
+            if (command.trim().equalsIgnoreCase("END")) throw new IllegalArgumentException("END inside a batch");
+            block.append(command).append('\n');
+        }
+        block.append("END\n");
+        return enqueue("BATCH", block.toString());
+    }
+
+    /**
+     * Asks the server to push reminders as this session's user's tasks fall due (REMINDERS ON).
+     * Each push ("REMINDER ..." lines) goes to listener on the I/O thread, between two responses.
+     */
+    public CompletableFuture<String> reminders(Consumer<String> listener) {
+        reminderListener = listener;
+        return send("REMINDERS ON");
+    }
+
+    public boolean isLoggedIn() {
+        return loggedIn;
+    }
+
+    /**
+     * Commands sent whose responses haven't arrived yet
+     */
+    public synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    public synchronized boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * Closes the connection at once (without LOGOUT); commands still waiting fail
+     */
+    @Override
+    public void close() {
+        fail(new IOException("Session closed"));
+    }
+
+    private static void checkLine(String command) {
+        if (command.indexOf('\n') >= 0 || command.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("A command must be a single line");
+        }
+    }
+
+    private CompletableFuture<String> enqueue(String command, String text) {
+        Pending request = new Pending(command);
+        ByteBuffer bytes = CHARSET.encode(text);
+        synchronized (this) {
+            if (closed) {
+                request.response.completeExceptionally(new IOException("Session closed"));
+                return request.response;
+            }
+            // Queued before it is written, so the response always finds it
+            pending.add(request);
+            output.add(bytes);
+            // Written straight away from this thread unless earlier output is still queued
+            if (connected && output.size() == 1) flush();
+        }
+        return request.response;
+    }
+
+    // Loop thread: starts connecting a freshly opened channel
+    void connect(InetSocketAddress address) {
+        try {
+            boolean done = channel.connect(address);
+            synchronized (this) {
+                key = channel.register(loop.selector, done ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, this);
+            }
+            if (done) connected();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    // Loop thread
+    void finishConnect() {
+        try {
+            if (channel.finishConnect()) connected();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private synchronized void connected() {
+        connected = true;
+        loop.interest(key, SelectionKey.OP_READ);
+        flush();
+    }
+
+    // Writes what the socket takes of the queued output, and asks for OP_WRITE if some is left
+    synchronized void flush() {
+        try {
+            while (!output.isEmpty()) {
+                ByteBuffer next = output.peek();
+                channel.write(next);
+                if (next.hasRemaining()) break;
+                output.poll();
+            }
+            loop.interest(key, output.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    // Loop thread: reads what has arrived and completes every response that is now whole
+    void read() {
+        int n;
+        try {
+            n = channel.read(readBuffer);
+        } catch (IOException e) {
+            fail(e);
+            return;
+        }
+        if (n < 0) {
+            fail(new EOFException("Server closed the connection"));
+            return;
+        }
+
+        readBuffer.flip();
+        while (readBuffer.hasRemaining()) {
+            byte b = readBuffer.get();
+            if (responseLength == responseBytes.length) responseBytes = Arrays.copyOf(responseBytes, responseLength * 2);
+            responseBytes[responseLength++] = b;
+            if (b != '\n') continue;
+
+            // A line of just "." (with either line ending) ends the response
+            int length = responseLength - lineStart;
+            boolean end = responseBytes[lineStart] == '.'
+                    && (length == 2 || (length == 3 && responseBytes[lineStart + 1] == '\r'));
+            if (end) {
+                completeResponse(lineStart);
+                responseLength = 0;
+                lineStart = 0;
+            } else {
+                lineStart = responseLength;
+            }
+        }
+        readBuffer.clear();
+    }
+
+    private void completeResponse(int length) {
+        String text = new String(responseBytes, 0, length, CHARSET);
+        if (text.indexOf('\r') >= 0) text = text.replace("\r\n", "\n");
+        if (text.endsWith("\n")) text = text.substring(0, text.length() - 1);
+
+        // A push answers no command
+        if (text.startsWith("REMINDER ")) {
+            Consumer<String> listener = reminderListener;
+            if (listener != null) listener.accept(text);
+            return;
+        }
+
+        Pending request;
+        synchronized (this) {
+            request = pending.poll();
+        }
+        // Nothing was asked: not a response of this protocol, dropped
+        if (request == null) return;
+
+        if (request.command != null) {
+            if (request.command.regionMatches(true, 0, "LOGIN ", 0, 6) && text.equals("LOGIN OK")) loggedIn = true;
+            if (request.command.trim().equalsIgnoreCase("LOGOUT") && text.equals("Logged out.")) loggedIn = false;
+        }
+        request.response.complete(text);
+    }
+
+    // Closes the connection and fails every command still waiting; the first failure wins
+    void fail(IOException error) {
+        List<Pending> waiting;
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            waiting = new ArrayList<>(pending);
+            pending.clear();
+            output.clear();
+            if (key != null) key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+        loggedIn = false;
+        for (Pending request : waiting) {
+            request.response.completeExceptionally(error);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package taskManager;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * A fixed number of sessions logged in as the same user. Each command goes to the
+ * open session with the fewest responses outstanding, so slow commands (a large
+ * VIEW) don't hold up the ones queued behind them on a single connection.
+ * Commands sent on different sessions may be applied in any order.
+ */
+public class TaskSessionPool implements AutoCloseable {
+
+    private final List<TaskSession> sessions;
+
+    private TaskSessionPool(List<TaskSession> sessions) {
+        this.sessions = sessions;
+    }
+
+    /**
+     * Connects size sessions and logs each one in; fails (with every session closed)
+     * if any of them can't connect or log in
+     */
+    public static CompletableFuture<TaskSessionPool> open(TaskClient client, String host, int port,
+                                                          String username, String password, int size) {
+        if (size < 1) throw new IllegalArgumentException("Pool size must be at least 1");
+        List<CompletableFuture<TaskSession>> connecting = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            connecting.add(client.connect(host, port).thenCompose(session ->
+                    session.login(username, password).thenApply(ok -> {
+                        if (!ok) {
+                            session.close();
+                            throw new CompletionException(new IOException("Login failed for " + username));
+                        }
+                        return session;
+                    })));
+        }
+
+        return CompletableFuture.allOf(connecting.toArray(new CompletableFuture<?>[0])).handle((ignored, error) -> {
+            List<TaskSession> sessions = new ArrayList<>();
+            for (CompletableFuture<TaskSession> future : connecting) {
+                if (!future.isCompletedExceptionally()) sessions.add(future.join());
+            }
+            if (error != null) {
+                sessions.forEach(TaskSession::close);
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                throw new CompletionException(cause instanceof IOException ? cause : new IOException(cause));
+            }
+            return new TaskSessionPool(sessions);
+        });
+    }
+
+    /**
+     * Sends one command on the least busy open session
+     */
+    public CompletableFuture<String> send(String command) {
+        TaskSession session = leastBusy();
+        if (session == null) return CompletableFuture.failedFuture(new IOException("No open session"));
+        return session.send(command);
+    }
+
+    /**
+     * Sends a BATCH block, whole, on the least busy open session
+     */
+    public CompletableFuture<String> batch(List<String> commands) {
+        TaskSession session = leastBusy();
+        if (session == null) return CompletableFuture.failedFuture(new IOException("No open session"));
+        return session.batch(commands);
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    private TaskSession leastBusy() {
+        TaskSession best = null;
+        int fewest = Integer.MAX_VALUE;
+        for (TaskSession session : sessions) {
+            if (!session.isOpen()) continue;
+            int pending = session.pendingCount();
+            if (pending < fewest) {
+                best = session;
+                fewest = pending;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Logs every session out, waiting for the answers, and closes them
+     */
+    @Override
+    public void close() {
+        List<CompletableFuture<String>> logouts = new ArrayList<>();
+        for (TaskSession session : sessions) {
+            logouts.add(session.send("LOGOUT"));
+        }
+        for (int i = 0; i < sessions.size(); i++) {
+            try {
+                logouts.get(i).join();
+            } catch (CompletionException e) {
+                // Already closed; nothing to log out
+            }
+            sessions.get(i).close();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package taskManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Where users' task files live. TaskDataManager keeps the resident copies in
+ * memory and goes through a TaskStore for everything on disk.
+ *
+ * configured() picks the implementation from system properties:
+ * taskManager.dataDir   base data directory, holding users.idx (default data/)
+ * taskManager.dataDirs  comma-separated task directories to shard users across
+ *                       (ShardedTaskStore); without it task files live in dataDir
+ *
+ * Calls for one user are serialized by the caller through UserLockRegistry.
+ */
+interface TaskStore {
+
+    File DATA_DIR = new File(System.getProperty("taskManager.dataDir", "data"));
+
+    /**
+     * Creates the task file of a newly registered user.
+     * Returns false if the user already has one.
+     */
+    boolean create(String username) throws IOException;
+
+    /**
+     * Removes a user's task files, e.g. to undo a failed registration
+     */
+    void delete(String username);
+
+    /**
+     * Loads a user's tasks, or returns null if the user has no task file
+     */
+    UserTasks load(String username) throws IOException;
+
+    /**
+     * Same, but without the secondary indexes VIEW and SEARCH use; for bulk jobs that only read the tasks
+     */
+    UserTasks loadUnindexed(String username) throws IOException;
+
+    /**
+     * Appends journal records (see TaskJournal), returning the bytes written.
+     * With sync they are on disk when this returns.
+     */
+    long append(String username, List<String> records, boolean sync) throws IOException;
+
+    /**
+     * Forces everything appended to a user's file to the disk
+     */
+    void sync(String username) throws IOException;
+
+    /**
+     * Rewrites a user's files to hold just their current tasks, as a binary
+     * snapshot or as text. Returns the bytes written.
+     */
+    long compact(String username, UserTasks data, boolean binary) throws IOException;
+
+    /**
+     * Returns the bytes a user's task files take on disk
+     */
+    long size(String username);
+
+    /**
+     * Returns the names of all users with a task file
+     */
+    List<String> usernames();
+
+    /**
+     * Returns a user's text file, which may not exist; for migrating files that predate users.idx
+     */
+    File textFile(String username);
+
+    /**
+     * Builds the store described by the taskManager.dataDir / dataDirs properties
+     */
+    static TaskStore configured() {
+        String dirs = System.getProperty("taskManager.dataDirs", "").trim();
+        if (dirs.isEmpty()) return new FileTaskStore(DATA_DIR);
+
+        List<String> names = new ArrayList<>();
+        List<TaskStore> shards = new ArrayList<>();
+        for (String dir : dirs.split(",")) {
+            if (dir.trim().isEmpty()) continue;
+            names.add(dir.trim());
+            shards.add(new FileTaskStore(new File(dir.trim())));
+        }
+        return shards.size() == 1 ? shards.get(0) : new ShardedTaskStore(names, shards);
+    }
+}
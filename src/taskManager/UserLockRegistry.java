@@ -0,0 +1,71 @@
+package taskManager;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Hands out one read/write lock per username.
+ * Operations on different users never wait on each other, and
+ * concurrent reads (VIEW) of the same user share the read lock.
+ *
+ * Locks of users with nothing resident are dropped (release), so the registry
+ * doesn't keep one for every username ever seen. A thread may still have fetched
+ * a lock just before it was dropped; readLock and writeLock therefore check, once
+ * they hold it, that it is still the user's lock, and otherwise take the new one.
+ */
+public class UserLockRegistry {
+
+    private static final ConcurrentHashMap<String, ReentrantReadWriteLock> LOCKS = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the lock guarding the given user's data, creating it on first use.
+     * To acquire it use readLock or writeLock; this is for unlocking one of those.
+     */
+    public static ReentrantReadWriteLock lockFor(String username) {
+        return LOCKS.computeIfAbsent(username, name -> new ReentrantReadWriteLock());
+    }
+
+    /**
+     * Acquires the user's read lock (timed by ServerMetrics) and returns it for unlocking
+     */
+    public static ReentrantReadWriteLock.ReadLock readLock(String username) {
+        while (true) {
+            ReentrantReadWriteLock lock = lockFor(username);
+            if (acquired(username, lock, lock.readLock())) return lock.readLock();
+        }
+    }
+
+    /**
+     * Acquires the user's write lock (timed by ServerMetrics) and returns it for unlocking
+     */
+    public static ReentrantReadWriteLock.WriteLock writeLock(String username) {
+        while (true) {
+            ReentrantReadWriteLock lock = lockFor(username);
+            if (acquired(username, lock, lock.writeLock())) return lock.writeLock();
+        }
+    }
+
+    // Locks part, keeping it only if lock is still the user's
+    private static boolean acquired(String username, ReentrantReadWriteLock lock, Lock part) {
+        ServerMetrics.lock(part);
+        if (LOCKS.get(username) == lock) return true;
+        part.unlock();
+        return false;
+    }
+
+    /**
+     * Drops the user's lock unless it is held or waited for; called once they have nothing resident
+     */
+    public static void release(String username) {
+        LOCKS.computeIfPresent(username, (name, lock) ->
+                lock.isWriteLocked() || lock.getReadLockCount() > 0 || lock.hasQueuedThreads() ? lock : null);
+    }
+
+    /**
+     * Number of users with a lock
+     */
+    public static int size() {
+        return LOCKS.size();
+    }
+}
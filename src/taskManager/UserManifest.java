@@ -0,0 +1,309 @@
+package taskManager;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Directory of every registered user (data/users.manifest), so startup reads one
+ * file instead of parsing users.idx line by line and listing the task files.
+ * Each entry holds the user's credentials and what is known about their task
+ * files without loading them: their size on disk, the number of tasks and the
+ * next task ID (-1 until the user's tasks have been loaded once).
+ *
+ * The manifest is a checkpoint of users.idx: its header records how many bytes
+ * of the index it covers, and CredentialStore parses only what was appended
+ * after that. It is rewritten (temp file and rename) when it changed, every
+ * taskManager.manifestIntervalMs milliseconds (default 60000) and on shutdown,
+ * so the task figures may lag behind the files; a user's tasks are always
+ * loaded from their files.
+ *
+ * Layout (big-endian):
+ * Header:  int magic "TMUM" | int version | long users.idx bytes covered | int entry count
+ * Entries: short name length | UTF-8 username | byte salt length | byte hash length | salt | hash
+ *          | long task file bytes | int task count | int next task ID
+ */
+class UserManifest {
+
+    static final File FILE = new File(TaskStore.DATA_DIR, "users.manifest");
+
+    static final long SAVE_INTERVAL_MS = Long.getLong("taskManager.manifestIntervalMs", 60_000);
+
+    private static final int MAGIC = 0x544D554D;
+    private static final int VERSION = 1;
+
+    private static final Logger logger = Logger.getLogger("practical");
+
+    static final class Entry {
+        // Salt then hash, at offset in an array shared by the entries read together
+        private final byte[] credentials;
+        private final int offset;
+        private final int saltLength;
+        private final int hashLength;
+
+        // Guarded by the entry; -1 while not known
+        private long fileBytes = -1;
+        private int taskCount = -1;
+        private int nextId = -1;
+
+        Entry(byte[] credentials, int offset, int saltLength, int hashLength) {
+            this.credentials = credentials;
+            this.offset = offset;
+            this.saltLength = saltLength;
+            this.hashLength = hashLength;
+        }
+
+        byte[] salt() {
+            return Arrays.copyOfRange(credentials, offset, offset + saltLength);
+        }
+
+        byte[] hash() {
+            return Arrays.copyOfRange(credentials, offset + saltLength, offset + saltLength + hashLength);
+        }
+    }
+
+    // username -> entry; replaced by one of the right size when the manifest is read
+    private static volatile Map<String, Entry> users = new ConcurrentHashMap<>();
+
+    // Bytes of users.idx that users covers; guarded by UserManifest.class, like adding entries
+    private static long indexBytes = 0;
+
+    // Totals over the entries with known figures
+    private static final LongAdder TASKS = new LongAdder();
+    private static final LongAdder FILE_BYTES = new LongAdder();
+    private static final AtomicInteger UNCOUNTED = new AtomicInteger();
+
+    // Set once CredentialStore has filled users, so nothing less is ever saved
+    private static volatile boolean complete = false;
+    private static volatile boolean changed = false;
+
+    static Entry get(String username) {
+        return users.get(username);
+    }
+
+    static int size() {
+        return users.size();
+    }
+
+    /**
+     * Reads the manifest into memory and returns how many bytes of users.idx it covers,
+     * or -1 (with nothing read) if there is no usable manifest for an index of that length
+     */
+    static synchronized long load(long indexLength) {
+        if (!FILE.exists()) return -1;
+        try {
+            byte[] manifest = Files.readAllBytes(FILE.toPath());
+            ByteBuffer buffer = ByteBuffer.wrap(manifest);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) throw new IOException("Not a user manifest");
+            long covered = buffer.getLong();
+            // The index was replaced or cut short since: its entries can't be trusted
+            if (covered > indexLength) throw new IOException("users.idx is shorter than the manifest covers");
+
+            // Nothing else sees the entries yet, so the totals are added up once at the end
+            int count = buffer.getInt();
+            users = new ConcurrentHashMap<>(count + count / 2 + 16);
+            long tasks = 0, fileBytes = 0;
+            int uncounted = 0;
+            for (int i = 0; i < count; i++) {
+                int nameLength = buffer.getShort() & 0xFFFF;
+                String username = new String(manifest, buffer.position(), nameLength, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + nameLength);
+                int saltLength = buffer.get() & 0xFF;
+                int hashLength = buffer.get() & 0xFF;
+                // Credentials stay where they are in the manifest bytes
+                Entry entry = new Entry(manifest, buffer.position(), saltLength, hashLength);
+                buffer.position(buffer.position() + saltLength + hashLength);
+                entry.fileBytes = buffer.getLong();
+                entry.taskCount = buffer.getInt();
+                entry.nextId = buffer.getInt();
+                if (users.put(username, entry) != null) throw new IOException("Duplicate user " + username);
+
+                if (entry.taskCount >= 0) tasks += entry.taskCount; else uncounted++;
+                if (entry.fileBytes >= 0) fileBytes += entry.fileBytes;
+            }
+            TASKS.add(tasks);
+            FILE_BYTES.add(fileBytes);
+            UNCOUNTED.addAndGet(uncounted);
+            indexBytes = covered;
+            changed = false;
+            return covered;
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            logger.log(Level.WARNING, "Ignoring unreadable " + FILE + ", reading users.idx instead", e);
+            users.clear();
+            TASKS.reset();
+            FILE_BYTES.reset();
+            UNCOUNTED.set(0);
+            return -1;
+        }
+    }
+
+    /**
+     * Called by CredentialStore once every user in users.idx is in; nothing is saved before
+     */
+    static void complete() {
+        complete = true;
+    }
+
+    /**
+     * Adds or replaces a user read from (or just appended to) users.idx, which is now
+     * indexLength bytes long. empty marks a new user with no tasks yet; otherwise their
+     * task figures are unknown until they are loaded.
+     */
+    static synchronized void add(String username, byte[] salt, byte[] hash, boolean empty, long indexLength) {
+        byte[] credentials = Arrays.copyOf(salt, salt.length + hash.length);
+        System.arraycopy(hash, 0, credentials, salt.length, hash.length);
+        Entry entry = new Entry(credentials, 0, salt.length, hash.length);
+        put(username, entry);
+        if (empty) record(entry, -1, 0, 1);
+        indexBytes = indexLength;
+        changed = true;
+    }
+
+    /**
+     * Drops a user whose removal was just appended to (or read from) users.idx,
+     * which is now indexLength bytes long
+     */
+    static synchronized void remove(String username, long indexLength) {
+        remove(username);
+        indexBytes = indexLength;
+        changed = true;
+    }
+
+    private static void put(String username, Entry entry) {
+        remove(username);
+        users.put(username, entry);
+        UNCOUNTED.incrementAndGet();
+    }
+
+    private static void remove(String username) {
+        Entry entry = users.remove(username);
+        if (entry == null) return;
+        // Takes its figures out of the totals
+        record(entry, -1, -1, -1);
+        UNCOUNTED.decrementAndGet();
+    }
+
+    /**
+     * Notes a user's task figures after their tasks were loaded, or their file rewritten
+     */
+    static void recordTasks(String username, long fileBytes, int taskCount, int nextId) {
+        Entry entry = users.get(username);
+        if (entry != null && record(entry, fileBytes, taskCount, nextId)) changed = true;
+    }
+
+    /**
+     * Notes bytes appended to a user's task file and their task figures afterwards
+     */
+    static void recordAppend(String username, long appended, int taskCount, int nextId) {
+        Entry entry = users.get(username);
+        if (entry == null) return;
+        synchronized (entry) {
+            long fileBytes = entry.fileBytes >= 0 ? entry.fileBytes + appended : -1;
+            if (record(entry, fileBytes, taskCount, nextId)) changed = true;
+        }
+    }
+
+    /**
+     * The next task ID recorded for a user, or -1 if not known
+     */
+    static int recordedNextId(String username) {
+        Entry entry = users.get(username);
+        if (entry == null) return -1;
+        synchronized (entry) {
+            return entry.nextId;
+        }
+    }
+
+    // Replaces an entry's figures, keeping the totals in step. Returns false if nothing changed.
+    private static boolean record(Entry entry, long fileBytes, int taskCount, int nextId) {
+        synchronized (entry) {
+            if (entry.fileBytes == fileBytes && entry.taskCount == taskCount && entry.nextId == nextId) return false;
+            if (entry.taskCount >= 0) TASKS.add(-entry.taskCount);
+            if (entry.fileBytes >= 0) FILE_BYTES.add(-entry.fileBytes);
+            if ((entry.taskCount >= 0) != (taskCount >= 0)) {
+                if (taskCount >= 0) UNCOUNTED.decrementAndGet(); else UNCOUNTED.incrementAndGet();
+            }
+            entry.fileBytes = fileBytes;
+            entry.taskCount = taskCount;
+            entry.nextId = nextId;
+            if (taskCount >= 0) TASKS.add(taskCount);
+            if (fileBytes >= 0) FILE_BYTES.add(fileBytes);
+            return true;
+        }
+    }
+
+    // Tasks of all users whose figures are known
+    static long storedTasks() {
+        return TASKS.sum();
+    }
+
+    // Task file bytes of all users whose size is known
+    static long storedBytes() {
+        return FILE_BYTES.sum();
+    }
+
+    // Users whose tasks haven't been counted yet
+    static int uncountedUsers() {
+        return UNCOUNTED.get();
+    }
+
+    /**
+     * Rewrites the manifest if anything changed since it was last written
+     */
+    static void saveIfChanged() {
+        if (!complete || !changed) return;
+        try {
+            save();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not write " + FILE, e);
+        }
+    }
+
+    /**
+     * Writes every entry to a temp file and moves it over the manifest.
+     * Registrations wait meanwhile, so the entries match the index bytes in the header.
+     */
+    static synchronized void save() throws IOException {
+        if (!complete) return;
+        changed = false;
+        File tempFile = new File(FILE.getParentFile(), FILE.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(indexBytes);
+            out.writeInt(users.size());
+            for (Map.Entry<String, Entry> user : users.entrySet()) {
+                byte[] name = user.getKey().getBytes(StandardCharsets.UTF_8);
+                Entry entry = user.getValue();
+                out.writeShort(name.length);
+                out.write(name);
+                out.writeByte(entry.saltLength);
+                out.writeByte(entry.hashLength);
+                out.write(entry.credentials, entry.offset, entry.saltLength + entry.hashLength);
+                synchronized (entry) {
+                    out.writeLong(entry.fileBytes);
+                    out.writeInt(entry.taskCount);
+                    out.writeInt(entry.nextId);
+                }
+            }
+        } catch (IOException e) {
+            changed = true;
+            tempFile.delete();
+            throw e;
+        }
+        DurableFiles.replace(tempFile, FILE);
+    }
+}
@@ -0,0 +1,155 @@
+package taskManager;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resident copy of one user's file, kept in memory while the user is logged in.
+ * Tasks are keyed by task ID, with secondary indexes of task IDs by due date (as an
+ * epoch day), by category and by the words of the description, for VIEW and SEARCH.
+ * Tasks must be changed through put/remove so the indexes stay in step.
+ * All fields are guarded by the user's lock in UserLockRegistry.
+ */
+class UserTasks {
+
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    // Line 1 of the user file, written back unchanged
+    String password;
+
+    // Next task ID to hand out
+    int nextId = 1;
+
+    // taskId -> task
+    final TreeMap<Integer, Task> tasks = new TreeMap<>();
+
+    // due date (epoch day) -> IDs of the tasks due that day
+    final TreeMap<Integer, Set<Integer>> byDate = new TreeMap<>();
+
+    // category ordinal -> IDs of the tasks in that category
+    final List<Set<Integer>> byCategory = new ArrayList<>();
+
+    // lower-case description word -> IDs of the tasks whose description has it
+    final Map<String, Set<Integer>> byWord = new HashMap<>();
+
+    // Journal records (see TaskJournal) not yet appended to disk
+    final List<String> pending = new ArrayList<>();
+
+    // Journal records not yet in the CommitLog (group durability policy only)
+    final List<String> unlogged = new ArrayList<>();
+
+    // Lines of the file that replay couldn't read (bad ID, category or date), written back
+    // unchanged by compaction so they are never lost
+    final List<String> unparsed = new ArrayList<>();
+
+    // Records in the on-disk journal that no longer describe a live task
+    int tombstones = 0;
+
+    // Number of logged-in sessions holding this user resident
+    int sessions = 0;
+
+    // Changes with every put/remove, and is new for every load, so views rendered
+    // from these tasks (see ViewCache) can be told apart from current ones
+    long version = VERSIONS.incrementAndGet();
+
+    // Views rendered from these tasks; guarded by itself rather than the user's lock,
+    // since they are filled in after it is released
+    final ViewCache.Views views = new ViewCache.Views();
+
+    // False for a copy read by a bulk job (TaskAdmin), which leaves the secondary indexes empty
+    final boolean indexed;
+
+    UserTasks() {
+        this(true);
+    }
+
+    UserTasks(boolean indexed) {
+        this.indexed = indexed;
+        for (int i = 0; i < TaskCategory.count(); i++) {
+            byCategory.add(new TreeSet<>());
+        }
+    }
+
+    // Adds or replaces a task, returning the task it replaced (or null)
+    Task put(Task task) {
+        Task previous = remove(task.id);
+        tasks.put(task.id, task);
+        version = VERSIONS.incrementAndGet();
+        if (!indexed) return previous;
+        byDate.computeIfAbsent(task.epochDay, d -> new TreeSet<>()).add(task.id);
+        byCategory.get(task.category).add(task.id);
+        for (String word : words(task.description)) {
+            byWord.computeIfAbsent(word, w -> new TreeSet<>()).add(task.id);
+        }
+        return previous;
+    }
+
+    // Removes a task, returning it (or null if there was none)
+    Task remove(int taskId) {
+        Task task = tasks.remove(taskId);
+        if (task == null) return null;
+        version = VERSIONS.incrementAndGet();
+        if (!indexed) return task;
+
+        Set<Integer> ids = byDate.get(task.epochDay);
+        if (ids != null) {
+            ids.remove(taskId);
+            if (ids.isEmpty()) byDate.remove(task.epochDay);
+        }
+        byCategory.get(task.category).remove(taskId);
+        for (String word : words(task.description)) {
+            ids = byWord.get(word);
+            if (ids == null) continue;
+            ids.remove(taskId);
+            if (ids.isEmpty()) byWord.remove(word);
+        }
+        return task;
+    }
+
+    // IDs of the tasks whose description has every one of the words, in ID order.
+    // Walks the rarest word's IDs and checks them against the others.
+    List<Integer> withWords(List<String> words) {
+        List<Set<Integer>> postings = new ArrayList<>();
+        for (String word : words) {
+            Set<Integer> ids = byWord.get(word);
+            if (ids == null) return List.of();
+            postings.add(ids);
+        }
+        postings.sort(Comparator.comparingInt(Set::size));
+
+        List<Integer> result = new ArrayList<>();
+        candidates:
+        for (Integer id : postings.get(0)) {
+            for (int i = 1; i < postings.size(); i++) {
+                if (!postings.get(i).contains(id)) continue candidates;
+            }
+            result.add(id);
+        }
+        return result;
+    }
+
+    // The words a description is indexed and searched by: runs of letters and digits, lower-cased
+    static Set<String> words(String text) {
+        Set<String> words = new LinkedHashSet<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean inWord = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (inWord && start < 0) {
+                start = i;
+            } else if (!inWord && start >= 0) {
+                words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return words;
+    }
+}
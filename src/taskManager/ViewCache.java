@@ -0,0 +1,237 @@
+package taskManager;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of rendered VIEW output (task tables and the reminders block) per user.
+ * Bounded by the number of cached views (-DtaskManager.viewCacheEntries, default 10000,
+ * 0 turns the cache off) and their size (-DtaskManager.viewCacheBytes, default 64 MB).
+ *
+ * A user's views live on their UserTasks (Views), guarded by that object alone, so
+ * looking one up never waits on another user. The bounds are kept with atomic totals
+ * and a CLOCK queue of the users with views: when a bound is passed, one thread walks
+ * the queue, gives users viewed since the last pass another round and evicts the
+ * others' views, so roughly the least recently viewed go first.
+ *
+ * Every view is stored with the UserTasks version it was rendered from. ADD / DELETE
+ * change the version, and a view of tasks that have changed since is never served,
+ * even if it was rendered concurrently with the change. Reminders are kept for the day
+ * they were rendered on, so they are rendered again after midnight.
+ */
+class ViewCache {
+
+    private static final int MAX_ENTRIES = Integer.getInteger("taskManager.viewCacheEntries", 10_000);
+    private static final long MAX_BYTES = Long.getLong("taskManager.viewCacheBytes", 64L << 20);
+
+    // Larger views are streamed uncached, so one huge table can't push out everyone else's
+    private static final long MAX_VIEW_BYTES = MAX_BYTES / 16;
+
+    // Rough size of one rendered table row, to decide before rendering
+    private static final int ROW_BYTES = 128;
+
+    // Users whose views were dropped may stay queued until this many more than those with views
+    private static final int MAX_EMPTY_QUEUED = 1024;
+
+    // Totals over every user's views
+    private static final AtomicInteger ENTRIES = new AtomicInteger();
+    private static final AtomicLong BYTES = new AtomicLong();
+
+    // Users with views, in the order the eviction pass visits them; QUEUED is its length
+    private static final ConcurrentLinkedQueue<Views> CLOCK = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger QUEUED = new AtomicInteger();
+
+    // Set while a thread runs the eviction pass; others don't wait for it
+    private static final AtomicBoolean EVICTING = new AtomicBoolean();
+
+    /**
+     * The rendered views of one user's tasks, held on their UserTasks.
+     * Guarded by itself, apart from referenced.
+     */
+    static final class Views {
+        // Version of the tasks the views were rendered from
+        private long version;
+        // query key (TaskQuery.cacheKey) -> rendered table
+        private final Map<String, String> tables = new HashMap<>();
+        private int remindersDay;
+        private String reminders;
+        private long bytes;
+        // In CLOCK
+        private boolean queued;
+        // Viewed since the eviction pass last visited
+        private volatile boolean referenced;
+
+        private int entries() {
+            return tables.size() + (reminders != null ? 1 : 0);
+        }
+
+        // Makes these the views of this version, dropping those of an older one.
+        // False if they are of a newer version already: the caller rendered outdated tasks.
+        private boolean renderedFrom(long version) {
+            if (version < this.version) return false;
+            if (version > this.version) {
+                if (entries() > 0) {
+                    clear();
+                    ServerMetrics.recordViewInvalidation();
+                }
+                this.version = version;
+            }
+            if (!queued) {
+                queued = true;
+                QUEUED.incrementAndGet();
+                CLOCK.add(this);
+            }
+            return true;
+        }
+
+        private void resize(long viewBytes, int views) {
+            bytes += viewBytes;
+            BYTES.addAndGet(viewBytes);
+            ENTRIES.addAndGet(views);
+        }
+
+        private void clear() {
+            ENTRIES.addAndGet(-entries());
+            BYTES.addAndGet(-bytes);
+            tables.clear();
+            reminders = null;
+            bytes = 0;
+        }
+    }
+
+    /**
+     * False if a table of this many rows is too large to cache (or the cache is off)
+     */
+    static boolean accepts(int rows) {
+        return MAX_ENTRIES > 0 && (long) rows * ROW_BYTES <= MAX_VIEW_BYTES;
+    }
+
+    /**
+     * The cached table for a query, or null if there is none for this version of the user's tasks
+     */
+    static String getTable(UserTasks data, String key, long version) {
+        if (MAX_ENTRIES <= 0) return null;
+        Views views = data.views;
+        String view;
+        synchronized (views) {
+            view = views.version == version ? views.tables.get(key) : null;
+        }
+        if (view != null) views.referenced = true;
+        ServerMetrics.recordViewCache(view != null);
+        return view;
+    }
+
+    /**
+     * The cached reminders for the given day, or null
+     */
+    static String getReminders(UserTasks data, int day, long version) {
+        if (MAX_ENTRIES <= 0) return null;
+        Views views = data.views;
+        String view;
+        synchronized (views) {
+            view = views.version == version && views.remindersDay == day ? views.reminders : null;
+        }
+        if (view != null) views.referenced = true;
+        ServerMetrics.recordViewCache(view != null);
+        return view;
+    }
+
+    static void putTable(UserTasks data, String key, long version, String view) {
+        if (MAX_ENTRIES <= 0 || sizeOf(view) > MAX_VIEW_BYTES) return;
+        Views views = data.views;
+        synchronized (views) {
+            if (!views.renderedFrom(version)) return;
+            String previous = views.tables.put(key, view);
+            if (previous != null) {
+                views.resize(-sizeOf(previous), -1);
+            }
+            views.resize(sizeOf(view), 1);
+        }
+        evictIfFull();
+    }
+
+    static void putReminders(UserTasks data, int day, long version, String view) {
+        if (MAX_ENTRIES <= 0 || sizeOf(view) > MAX_VIEW_BYTES) return;
+        Views views = data.views;
+        synchronized (views) {
+            if (!views.renderedFrom(version)) return;
+            if (views.reminders != null) {
+                views.resize(-sizeOf(views.reminders), -1);
+            }
+            views.remindersDay = day;
+            views.reminders = view;
+            views.resize(sizeOf(view), 1);
+        }
+        evictIfFull();
+    }
+
+    /**
+     * Drops every view of the user, after their tasks changed or left memory
+     */
+    static void invalidate(UserTasks data) {
+        if (MAX_ENTRIES <= 0) return;
+        Views views = data.views;
+        synchronized (views) {
+            if (views.entries() == 0) return;
+            views.clear();
+        }
+        ServerMetrics.recordViewInvalidation();
+    }
+
+    static int size() {
+        return ENTRIES.get();
+    }
+
+    static long bytes() {
+        return BYTES.get();
+    }
+
+    private static boolean full() {
+        return ENTRIES.get() > MAX_ENTRIES || BYTES.get() > MAX_BYTES;
+    }
+
+    // Users left in CLOCK with no views, as invalidate leaves them, are only taken out by a pass
+    private static boolean sweepDue() {
+        return QUEUED.get() > 2L * ENTRIES.get() + MAX_EMPTY_QUEUED;
+    }
+
+    // Runs the eviction pass unless another thread is: at most two rounds of CLOCK,
+    // until both bounds hold and the users without views are out of it
+    private static void evictIfFull() {
+        if (!full() && !sweepDue()) return;
+        if (!EVICTING.compareAndSet(false, true)) return;
+        try {
+            for (int steps = 2 * QUEUED.get(); steps > 0; steps--) {
+                boolean full = full();
+                if (!full && !sweepDue()) break;
+                Views views = CLOCK.poll();
+                if (views == null) break;
+                synchronized (views) {
+                    if (views.entries() > 0 && (!full || views.referenced)) {
+                        // Another round: only sweeping, or viewed since the last one
+                        if (full) views.referenced = false;
+                        CLOCK.add(views);
+                        continue;
+                    }
+                    if (views.entries() > 0) {
+                        ServerMetrics.recordViewEviction(views.entries());
+                        views.clear();
+                    }
+                    views.queued = false;
+                    QUEUED.decrementAndGet();
+                }
+            }
+        } finally {
+            EVICTING.set(false);
+        }
+    }
+
+    // Heap taken by a cached string, roughly: Latin-1 text is one byte per char
+    private static long sizeOf(String view) {
+        return 40 + view.length();
+    }
+}